@@ -0,0 +1,91 @@
+package com.kripstanx.security.jwt;
+
+import com.kripstanx.config.ApplicationProperties;
+import com.kripstanx.repository.AuthorityRepository;
+import com.kripstanx.repository.SessionRevocationRepository;
+import com.kripstanx.repository.UserRepository;
+import com.kripstanx.security.AuthoritiesConstants;
+import com.kripstanx.security.SessionRevocationList;
+import com.kripstanx.security.SessionService;
+import com.kripstanx.security.SessionTokenRegistry;
+import com.kripstanx.service.cluster.ClusterInvalidationService;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.util.ReflectionTestUtils;
+import tech.jhipster.config.JHipsterProperties;
+
+import java.util.Arrays;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * The authentication components of the benchmarks, built without a Spring context. The repositories are mocks: the
+ * benchmarked paths must not reach the database.
+ */
+final class AuthenticationBenchmarkSupport {
+
+    static final String USERNAME = "benchmark";
+
+    static final long TOKEN_VALIDITY_IN_MILLISECONDS = 3_600_000;
+
+    private static final String SECRET =
+        "bXktc2VjcmV0LWtleS13aGljaC1zaG91bGQtYmUtY2hhbmdlZC1pbi1wcm9kdWN0aW9uLWFuZC1iZS1iYXNlNjQtZW5jb2RlZAo=";
+
+    private AuthenticationBenchmarkSupport() {
+    }
+
+    static JHipsterProperties jHipsterProperties() {
+        JHipsterProperties jHipsterProperties = new JHipsterProperties();
+        jHipsterProperties.getSecurity().getAuthentication().getJwt().setSecret(SECRET);
+        jHipsterProperties.getSecurity().getAuthentication().getJwt().setTokenValidityInSeconds(TOKEN_VALIDITY_IN_MILLISECONDS / 1000);
+        return jHipsterProperties;
+    }
+
+    /**
+     * @param caches whether the claims and authentication caches are enabled
+     */
+    static ApplicationProperties applicationProperties(boolean caches) {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getJwt().getClaimsCache().setEnabled(caches);
+        applicationProperties.getJwt().getAuthenticationCache().setEnabled(caches);
+        return applicationProperties;
+    }
+
+    static TokenProvider tokenProvider(boolean caches) {
+        return new TokenProvider(jHipsterProperties(), applicationProperties(caches));
+    }
+
+    /**
+     * @param stateless whether multiple sessions are allowed: validated against the revocation list, otherwise against
+     *                  the registered token of the user
+     */
+    static SessionService sessionService(TokenProvider tokenProvider, boolean caches, boolean stateless) {
+        SessionTokenRegistry sessionTokenRegistry = new SessionTokenRegistry();
+        SessionService sessionService = new SessionService(jHipsterProperties(),
+                                                           tokenProvider,
+                                                           mock(UserRepository.class),
+                                                           sessionTokenRegistry,
+                                                           new SessionRevocationList(mock(SessionRevocationRepository.class)),
+                                                           mock(AuthorityRepository.class),
+                                                           applicationProperties(caches),
+                                                           mock(ClusterInvalidationService.class));
+        ReflectionTestUtils.setField(sessionService, "allowMultipleSessions", stateless);
+        return sessionService;
+    }
+
+    /**
+     * Register the token as the current token of the user, as a login does.
+     */
+    static void registerToken(SessionService sessionService, String token) {
+        SessionTokenRegistry sessionTokenRegistry =
+            (SessionTokenRegistry) ReflectionTestUtils.getField(sessionService, "sessionTokenRegistry");
+        sessionTokenRegistry.refresh(USERNAME, null, SessionTokenRegistry.SessionTokens.of(token, null, null));
+    }
+
+    static Authentication authentication() {
+        return new UsernamePasswordAuthenticationToken(USERNAME, "", Arrays.asList(
+            new SimpleGrantedAuthority(AuthoritiesConstants.USER),
+            new SimpleGrantedAuthority(AuthoritiesConstants.ADMIN)));
+    }
+}
@@ -0,0 +1,102 @@
+package com.kripstanx.security.jwt;
+
+import com.kripstanx.security.SessionAuthenticationToken;
+import com.kripstanx.security.SessionService;
+import io.jsonwebtoken.Claims;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The authentication of an API request: the token is resolved from the header, the session validated, and the
+ * authentication created, up to a full pass of the filter against a chain doing nothing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JWTFilterBenchmark {
+
+    @Param({ "true", "false" })
+    public boolean caches;
+
+    /**
+     * Whether multiple sessions are allowed, see {@link SessionService#isSessionValid(String)}.
+     */
+    @Param({ "false", "true" })
+    public boolean stateless;
+
+    private TokenProvider tokenProvider;
+
+    private SessionService sessionService;
+
+    private JWTFilter filter;
+
+    private String token;
+
+    private Claims claims;
+
+    private MockHttpServletRequest request;
+
+    private MockHttpServletResponse response;
+
+    private FilterChain chain;
+
+    @Setup
+    public void setUp() {
+        tokenProvider = AuthenticationBenchmarkSupport.tokenProvider(caches);
+        sessionService = AuthenticationBenchmarkSupport.sessionService(tokenProvider, caches, stateless);
+        filter = new JWTFilter(sessionService);
+        token = tokenProvider.createToken(AuthenticationBenchmarkSupport.authentication(),
+                                          AuthenticationBenchmarkSupport.TOKEN_VALIDITY_IN_MILLISECONDS);
+        AuthenticationBenchmarkSupport.registerToken(sessionService, token);
+        claims = tokenProvider.validateTokenAndGetClaims(token).orElseThrow(IllegalStateException::new);
+        request = new MockHttpServletRequest("GET", "/api/account");
+        request.addHeader(JWTConfigurer.AUTHORIZATION_HEADER, "Bearer " + token);
+        response = new MockHttpServletResponse();
+        chain = (servletRequest, servletResponse) -> { };
+    }
+
+    @TearDown
+    public void tearDown() {
+        sessionService.destroy();
+        tokenProvider.destroy();
+    }
+
+    @Benchmark
+    public String resolveToken() {
+        return JWTFilter.resolveToken(request);
+    }
+
+    @Benchmark
+    public SessionAuthenticationToken createAuthentication() {
+        return sessionService.createAuthentication(token, claims);
+    }
+
+    @Benchmark
+    public void doFilter(Blackhole blackhole) throws IOException, ServletException {
+        filter.doFilter(request, response, chain);
+        blackhole.consume(SecurityContextHolder.getContext().getAuthentication());
+        SecurityContextHolder.clearContext();
+    }
+}
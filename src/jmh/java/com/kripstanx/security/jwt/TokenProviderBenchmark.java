@@ -0,0 +1,62 @@
+package com.kripstanx.security.jwt;
+
+import io.jsonwebtoken.Claims;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.core.Authentication;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signing a token at login, and verifying it on every API request, with and without the claims cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenProviderBenchmark {
+
+    @Param({ "true", "false" })
+    public boolean caches;
+
+    private TokenProvider tokenProvider;
+
+    private Authentication authentication;
+
+    private String token;
+
+    @Setup
+    public void setUp() {
+        tokenProvider = AuthenticationBenchmarkSupport.tokenProvider(caches);
+        authentication = AuthenticationBenchmarkSupport.authentication();
+        token = tokenProvider.createToken(authentication, AuthenticationBenchmarkSupport.TOKEN_VALIDITY_IN_MILLISECONDS);
+    }
+
+    @TearDown
+    public void tearDown() {
+        tokenProvider.destroy();
+    }
+
+    @Benchmark
+    public String createToken() {
+        return tokenProvider.createToken(authentication, AuthenticationBenchmarkSupport.TOKEN_VALIDITY_IN_MILLISECONDS);
+    }
+
+    @Benchmark
+    public Optional<Claims> validateTokenAndGetClaims() {
+        return tokenProvider.validateTokenAndGetClaims(token);
+    }
+}
@@ -0,0 +1,138 @@
+package com.kripstanx.service.builder;
+
+import com.kripstanx.domain.User;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Deterministic users for the quick search benchmarks: the same seed and row count always generate the same rows, so
+ * the generated database can be reused by the forks and the runs can be compared.
+ */
+final class QuickSearchBenchmarkData {
+
+    /**
+     * The generated ids start here, above the ids of the Liquibase users.
+     */
+    static final long FIRST_ID = 1_000_000L;
+
+    private static final long SEED = 42L;
+
+    private static final int BATCH_SIZE = 1000;
+
+    private static final int COMMIT_SIZE = 20_000;
+
+    private static final String PASSWORD_HASH = "$2a$10$VEjxo0jq2YG9Rbk2HmX9S.k1uZBGYUHdUcid3g/vfiEl7lwWgOH/K";
+
+    private static final Instant FIRST_CREATED_DATE = Instant.parse("2015-01-01T00:00:00Z");
+
+    private static final long CREATED_DATE_RANGE_SECONDS = Duration.ofDays(6 * 365).getSeconds();
+
+    private static final String[] FIRST_NAMES = {
+        "John", "Jane", "Peter", "Anna", "Michael", "Maria", "David", "Laura", "James", "Emma", "Robert", "Olivia",
+        "William", "Sophia", "Thomas", "Julia", "Daniel", "Eva", "George", "Kate", "Andrew", "Lucy", "Paul", "Nora",
+        "Mark", "Zsofia", "Gabor", "Pierre", "Claire", "Hans", "Greta", "Luca"
+    };
+
+    private static final String[] LAST_NAMES = {
+        "Smith", "Johnson", "Williams", "Brown", "Jones", "Miller", "Davis", "Wilson", "Anderson", "Taylor", "Thomas",
+        "Moore", "Martin", "Jackson", "Thompson", "White", "Harris", "Clark", "Lewis", "Walker", "Hall", "Young",
+        "King", "Wright", "Scott", "Green", "Baker", "Adams", "Nagy", "Kovacs", "Toth", "Szabo", "Dubois", "Laurent",
+        "Muller", "Schmidt", "Schneider", "Fischer", "Weber", "Becker"
+    };
+
+    private static final String[] DOMAINS = { "example.com", "mail.test", "corp.local", "kripstanx.dev" };
+
+    /**
+     * Weighted towards English, like the real user base.
+     */
+    private static final String[] LANG_KEYS = { "en", "en", "en", "en", "fr", "de", "hu" };
+
+    private QuickSearchBenchmarkData() {
+    }
+
+    /**
+     * @return the number of generated users in the database
+     */
+    static long countUsers(DataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("select count(*) from user where id >= " + FIRST_ID)) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    /**
+     * Replace the generated users with {@code rows} new ones, with their search text rendered by the plan.
+     */
+    static void generate(DataSource dataSource, QuickSearchPlan<User> plan, int rows) throws SQLException {
+        Random random = new Random(SEED);
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("delete from user where id >= " + FIRST_ID);
+            }
+            try (PreparedStatement insert = connection.prepareStatement(
+                "insert into user (id, username, password_hash, firstname, lastname, email, active_indicator, " +
+                "lang_key, created_by, created_date, password_expiration_date, search_text) " +
+                "values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+                for (int i = 0; i < rows; i++) {
+                    User user = user(random, FIRST_ID + i);
+                    insert.setLong(1, user.getId());
+                    insert.setString(2, user.getUsername());
+                    insert.setString(3, user.getPassword());
+                    insert.setString(4, user.getFirstName());
+                    insert.setString(5, user.getLastName());
+                    insert.setString(6, user.getEmail());
+                    insert.setBoolean(7, user.isActiveIndicator());
+                    insert.setString(8, user.getLangKey());
+                    insert.setString(9, user.getCreatedBy());
+                    insert.setTimestamp(10, Timestamp.from(user.getCreatedDate()));
+                    insert.setTimestamp(11, Timestamp.from(user.getPasswordExpirationDate()));
+                    insert.setString(12, plan.toSearchText(user));
+                    insert.addBatch();
+                    if ((i + 1) % BATCH_SIZE == 0) {
+                        insert.executeBatch();
+                    }
+                    if ((i + 1) % COMMIT_SIZE == 0) {
+                        connection.commit();
+                    }
+                }
+                insert.executeBatch();
+            }
+            connection.commit();
+        }
+    }
+
+    private static User user(Random random, long id) {
+        String firstName = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+        String lastName = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+        // the id keeps the username and the email unique
+        String username = (firstName + "." + lastName).toLowerCase(Locale.ROOT) + "." + (id - FIRST_ID);
+        Instant createdDate = FIRST_CREATED_DATE.plusSeconds((long) (random.nextDouble() * CREATED_DATE_RANGE_SECONDS));
+
+        User user = new User();
+        user.setId(id);
+        user.setUsername(username);
+        user.setPassword(PASSWORD_HASH);
+        user.setFirstName(firstName);
+        user.setLastName(lastName);
+        user.setEmail(username + "@" + DOMAINS[random.nextInt(DOMAINS.length)]);
+        user.setActiveIndicator(random.nextInt(10) < 8);
+        user.setLangKey(LANG_KEYS[random.nextInt(LANG_KEYS.length)]);
+        user.setCreatedBy("system");
+        user.setCreatedDate(createdDate);
+        user.setPasswordExpirationDate(createdDate.plus(Duration.ofDays(90 + random.nextInt(275))));
+        return user;
+    }
+}
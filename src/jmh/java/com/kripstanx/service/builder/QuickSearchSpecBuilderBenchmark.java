@@ -0,0 +1,301 @@
+package com.kripstanx.service.builder;
+
+import com.kripstanx.KripStanxApplication;
+import com.kripstanx.domain.User;
+import com.kripstanx.domain.User_;
+import com.kripstanx.service.search.QuickSearchIndex;
+import com.kripstanx.service.search.QuickSearchIndexLoader;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.support.SimpleJpaRepository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The quick search of the users with every kind of attribute, on a generated H2 database, per search mode: building
+ * the specification, generating the SQL, and the latency percentiles of the searched page.
+ * <p>
+ * The statements per search and the rows scanned by H2 are published as the secondary results of
+ * {@link #countQueryWork(QueryCounters)}, the rows scanned come from {@code EXPLAIN ANALYZE}, so the literals are
+ * rendered inline instead of bound.
+ * <p>
+ * The users are generated once per row count into {@code target/quick-search-benchmark}, and reused by the forks.
+ * Use e.g. {@code -Djmh.args="QuickSearchSpecBuilderBenchmark -p rows=100000"} for a quicker run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class QuickSearchSpecBuilderBenchmark {
+
+    private static final int PAGE_SIZE = 20;
+
+    private static final Pattern SCAN_COUNT = Pattern.compile("scanCount: (\\d+)");
+
+    public enum SearchMode {
+        /**
+         * An expression per attribute.
+         */
+        ATTRIBUTES,
+        /**
+         * A single LIKE on the search text column.
+         */
+        SEARCH_TEXT,
+        /**
+         * The n-gram index, falling back to the search text column.
+         */
+        INDEX
+    }
+
+    @Param({ "1000000" })
+    public int rows;
+
+    @Param({ "ATTRIBUTES", "SEARCH_TEXT", "INDEX" })
+    public SearchMode searchMode;
+
+    /**
+     * A name prefix, a name, an alias matching most users, an alias, a padded id and a created date.
+     */
+    @Param({ "smi", "john+smith", "active", "english", "00010001", "15/03/18" })
+    public String text;
+
+    private ConfigurableApplicationContext context;
+
+    private DataSource dataSource;
+
+    private EntityManager entityManager;
+
+    private SimpleJpaRepository<User, Long> repository;
+
+    private QuickSearchIndex quickSearchIndex;
+
+    private QuickSearchPlan<User> plan;
+
+    private Specification<User> specification;
+
+    @Setup
+    public void setUp() throws SQLException {
+        context = new SpringApplicationBuilder(KripStanxApplication.class)
+            .profiles("dev")
+            .properties("server.port=0",
+                        "spring.devtools.restart.enabled=false",
+                        "spring.datasource.url=jdbc:h2:file:./target/quick-search-benchmark/users-" + rows +
+                        ";DB_CLOSE_DELAY=-1;CACHE_SIZE=524288",
+                        "spring.jpa.properties.hibernate.criteria.literal_handling_mode=inline",
+                        "spring.jpa.properties.hibernate.session_factory.statement_inspector=" +
+                        CapturingStatementInspector.class.getName(),
+                        "application.quick-search.index.enabled=" + (searchMode == SearchMode.INDEX))
+            .run();
+        quickSearchIndex = context.getBean(QuickSearchIndex.class);
+        plan = builder(null).compile();
+
+        dataSource = context.getBean(DataSource.class);
+        if (QuickSearchBenchmarkData.countUsers(dataSource) != rows) {
+            QuickSearchBenchmarkData.generate(dataSource, plan, rows);
+            context.getBean(QuickSearchIndexLoader.class).rebuild();
+        }
+
+        entityManager = context.getBean(EntityManagerFactory.class).createEntityManager();
+        repository = new SimpleJpaRepository<>(User.class, entityManager);
+        specification = plan.toSpecification(text);
+    }
+
+    @TearDown
+    public void tearDown() {
+        entityManager.close();
+        context.close();
+    }
+
+    /**
+     * Every kind of attribute of the quick search, searched as the given mode.
+     */
+    private QuickSearchSpecBuilder<User> builder(String quickSearchText) {
+        QuickSearchSpecBuilder<User> builder = new QuickSearchSpecBuilder<User>(quickSearchText)
+            .multiTerm()
+            .addStringAttribute(User_.username)
+            .addStringAttribute(User_.email)
+            .addConcatenatedAttributes(User_.firstName, " ", User_.lastName)
+            .addPaddedStringAttribute(User_.id, 10)
+            .addInstantAttribute(User_.createdDate, "UTC")
+            .addDateAttribute(User_.passwordExpirationDate)
+            .addAliasedBooleanAttribute(User_.activeIndicator, "Active")
+            .addAliasedStringAttribute(User_.langKey, "en", "English")
+            .addAliasedStringAttribute(User_.langKey, "fr", "French")
+            .addAliasedStringAttribute(User_.langKey, "de", "German")
+            .addAliasedStringAttribute(User_.langKey, "hu", "Hungarian");
+        if (searchMode != SearchMode.ATTRIBUTES) {
+            builder.useSearchTextColumn(User_.searchText, false);
+        }
+        if (searchMode == SearchMode.INDEX) {
+            builder.useIndex(quickSearchIndex, User.class);
+        }
+        return builder;
+    }
+
+    private static long rowsScanned(DataSource dataSource, String sql) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("explain analyze " + sql)) {
+            long scanned = 0;
+            while (resultSet.next()) {
+                Matcher matcher = SCAN_COUNT.matcher(resultSet.getString(1));
+                while (matcher.find()) {
+                    scanned += Long.parseLong(matcher.group(1));
+                }
+            }
+            return scanned;
+        }
+    }
+
+    private Page<User> search() {
+        try {
+            return repository.findAll(specification, PageRequest.of(0, PAGE_SIZE, Sort.by("id")));
+        } finally {
+            entityManager.clear();
+        }
+    }
+
+    @Benchmark
+    public Specification<User> buildSpecification() {
+        return builder(text).build();
+    }
+
+    @Benchmark
+    public Specification<User> bindCompiledPlan() {
+        return plan.toSpecification(text);
+    }
+
+    /**
+     * The criteria query of the page, to its Hibernate query. The SQL of the same query is cached by the query plan
+     * cache, like in the application.
+     */
+    @Benchmark
+    public TypedQuery<User> generateSql() {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<User> query = criteriaBuilder.createQuery(User.class);
+        Root<User> root = query.from(User.class);
+        Predicate predicate = specification.toPredicate(root, query, criteriaBuilder);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.orderBy(criteriaBuilder.asc(root.get(User_.id)));
+        return entityManager.createQuery(query).setMaxResults(PAGE_SIZE);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Page<User> executeQuery() {
+        return search();
+    }
+
+    /**
+     * The search of {@link #executeQuery()}, counting its statements and the rows they scan. Its time includes the
+     * {@code EXPLAIN ANALYZE} of the statements, see {@link #executeQuery()} for the latency.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Page<User> countQueryWork(QueryCounters counters) throws SQLException {
+        CapturingStatementInspector.start();
+        Page<User> page;
+        try {
+            page = search();
+        } finally {
+            CapturingStatementInspector.stop();
+        }
+        List<String> statements = CapturingStatementInspector.captured();
+        long scanned = 0;
+        for (String sql : statements) {
+            scanned += rowsScanned(dataSource, sql);
+        }
+        counters.statements = statements.size();
+        counters.rowsScanned = scanned;
+        counters.usersFound = page.getTotalElements();
+        return page;
+    }
+
+    /**
+     * The work of a single search, reported in the results next to the time of {@link #countQueryWork(QueryCounters)}.
+     * The fields are assigned rather than incremented by every search, so the reported values are per search.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class QueryCounters {
+
+        public long statements;
+
+        public long rowsScanned;
+
+        public long usersFound;
+    }
+
+    /**
+     * Captures the SQL of the searches in {@link #countQueryWork(QueryCounters)}, instantiated by Hibernate.
+     */
+    public static class CapturingStatementInspector implements StatementInspector {
+
+        private static final List<String> CAPTURED = new ArrayList<>();
+
+        private static volatile boolean capturing;
+
+        static synchronized void start() {
+            CAPTURED.clear();
+            capturing = true;
+        }
+
+        static void stop() {
+            capturing = false;
+        }
+
+        static synchronized List<String> captured() {
+            return new ArrayList<>(CAPTURED);
+        }
+
+        @Override
+        public String inspect(String sql) {
+            if (capturing) {
+                synchronized (CapturingStatementInspector.class) {
+                    CAPTURED.add(sql);
+                }
+            }
+            return sql;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.kripstanx.service.builder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The LIKE term of a quick search text, single pass against the previous decode, lower case and regex replaces.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QuickSearchTextNormalizerBenchmark {
+
+    @Param({ "john", "John+Smith", "100%25_done", "J%C3%B6rg+M%C3%BCller" })
+    public String text;
+
+    @Benchmark
+    public String singlePass() {
+        return QuickSearchTextNormalizer.toLikeTerm(text);
+    }
+
+    @Benchmark
+    public String decodeLowerCaseReplaceAll() throws UnsupportedEncodingException {
+        return URLDecoder.decode(text, StandardCharsets.UTF_8.name())
+                         .toLowerCase(Locale.ROOT)
+                         .replaceAll("%", "|%")
+                         .replaceAll("_", "|_");
+    }
+}
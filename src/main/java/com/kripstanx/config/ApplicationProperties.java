@@ -12,6 +12,16 @@ public class ApplicationProperties {
 
     private List<User> defaultUsers;
 
+    private final Jwt jwt = new Jwt();
+
+    private final Cluster cluster = new Cluster();
+
+    private final Cache cache = new Cache();
+
+    private final Audit audit = new Audit();
+
+    private final QuickSearch quickSearch = new QuickSearch();
+
     public List<User> getDefaultUsers() {
         return defaultUsers;
     }
@@ -28,4 +38,623 @@ public class ApplicationProperties {
         this.inactivityTimeoutMinutes = inactivityTimeoutMinutes;
     }
 
+    public Jwt getJwt() {
+        return jwt;
+    }
+
+    public Cluster getCluster() {
+        return cluster;
+    }
+
+    public Cache getCache() {
+        return cache;
+    }
+
+    public Audit getAudit() {
+        return audit;
+    }
+
+    public QuickSearch getQuickSearch() {
+        return quickSearch;
+    }
+
+    public static class Jwt {
+
+        private final TokenCache claimsCache = new TokenCache();
+
+        private final TokenCache authenticationCache = new TokenCache();
+
+        public TokenCache getClaimsCache() {
+            return claimsCache;
+        }
+
+        public TokenCache getAuthenticationCache() {
+            return authenticationCache;
+        }
+    }
+
+    public static class TokenCache {
+
+        private boolean enabled = true;
+
+        private long maxEntries = 10000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(long maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+    }
+
+    public static class Cluster {
+
+        private final Invalidation invalidation = new Invalidation();
+
+        public Invalidation getInvalidation() {
+            return invalidation;
+        }
+    }
+
+    public static class Invalidation {
+
+        /**
+         * {@code loopback} on a single node, {@code sqs} when several nodes are running.
+         */
+        private String bus = "loopback";
+
+        /**
+         * Id of this node, a random one is generated at startup if not set.
+         */
+        private String nodeId;
+
+        private int batchSize = 100;
+
+        private int maxPending = 100000;
+
+        private final Sqs sqs = new Sqs();
+
+        public String getBus() {
+            return bus;
+        }
+
+        public void setBus(String bus) {
+            this.bus = bus;
+        }
+
+        public String getNodeId() {
+            return nodeId;
+        }
+
+        public void setNodeId(String nodeId) {
+            this.nodeId = nodeId;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public int getMaxPending() {
+            return maxPending;
+        }
+
+        public void setMaxPending(int maxPending) {
+            this.maxPending = maxPending;
+        }
+
+        public Sqs getSqs() {
+            return sqs;
+        }
+    }
+
+    public static class Sqs {
+
+        private String region;
+
+        private String queueNamePrefix = "kripstanx-invalidation-";
+
+        private int messageRetentionSeconds = 300;
+
+        public String getRegion() {
+            return region;
+        }
+
+        public void setRegion(String region) {
+            this.region = region;
+        }
+
+        public String getQueueNamePrefix() {
+            return queueNamePrefix;
+        }
+
+        public void setQueueNamePrefix(String queueNamePrefix) {
+            this.queueNamePrefix = queueNamePrefix;
+        }
+
+        public int getMessageRetentionSeconds() {
+            return messageRetentionSeconds;
+        }
+
+        public void setMessageRetentionSeconds(int messageRetentionSeconds) {
+            this.messageRetentionSeconds = messageRetentionSeconds;
+        }
+    }
+
+    public static class Cache {
+
+        private final TieredCache users = new TieredCache();
+
+        public TieredCache getUsers() {
+            return users;
+        }
+    }
+
+    /**
+     * Ehcache with an on-heap tier for the hot entries and an off-heap tier for the rest.
+     */
+    public static class TieredCache {
+
+        private long heapMaxEntries = 1000;
+
+        private long offheapMaxSizeMb = 32;
+
+        private long timeToLiveSeconds = 3600;
+
+        public long getHeapMaxEntries() {
+            return heapMaxEntries;
+        }
+
+        public void setHeapMaxEntries(long heapMaxEntries) {
+            this.heapMaxEntries = heapMaxEntries;
+        }
+
+        public long getOffheapMaxSizeMb() {
+            return offheapMaxSizeMb;
+        }
+
+        public void setOffheapMaxSizeMb(long offheapMaxSizeMb) {
+            this.offheapMaxSizeMb = offheapMaxSizeMb;
+        }
+
+        public long getTimeToLiveSeconds() {
+            return timeToLiveSeconds;
+        }
+
+        public void setTimeToLiveSeconds(long timeToLiveSeconds) {
+            this.timeToLiveSeconds = timeToLiveSeconds;
+        }
+    }
+
+    public static class Audit {
+
+        /**
+         * Number of audit events buffered for the background writer, events are written synchronously when it is full.
+         */
+        private int bufferSize = 10000;
+
+        private int batchSize = 100;
+
+        /**
+         * Maximum time an audit event waits for its batch to fill up.
+         */
+        private long flushIntervalMs = 200;
+
+        /**
+         * Number of times a batch which could not be written is retried before its events are dropped, to the log.
+         */
+        private int writeRetries = 3;
+
+        /**
+         * Wait before the first retry of a batch, doubled for each further retry.
+         */
+        private long retryBackoffMs = 500;
+
+        private final Purge purge = new Purge();
+
+        private final Archive archive = new Archive();
+
+        private final Partitioning partitioning = new Partitioning();
+
+        public int getBufferSize() {
+            return bufferSize;
+        }
+
+        public void setBufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public long getFlushIntervalMs() {
+            return flushIntervalMs;
+        }
+
+        public void setFlushIntervalMs(long flushIntervalMs) {
+            this.flushIntervalMs = flushIntervalMs;
+        }
+
+        public int getWriteRetries() {
+            return writeRetries;
+        }
+
+        public void setWriteRetries(int writeRetries) {
+            this.writeRetries = writeRetries;
+        }
+
+        public long getRetryBackoffMs() {
+            return retryBackoffMs;
+        }
+
+        public void setRetryBackoffMs(long retryBackoffMs) {
+            this.retryBackoffMs = retryBackoffMs;
+        }
+
+        public Purge getPurge() {
+            return purge;
+        }
+
+        public Archive getArchive() {
+            return archive;
+        }
+
+        public Partitioning getPartitioning() {
+            return partitioning;
+        }
+    }
+
+    public static class Partitioning {
+
+        public enum Granularity {
+            DAY,
+            MONTH,
+        }
+
+        /**
+         * Purge by dropping whole partitions, requires MySQL and the audit-partitioning Liquibase context.
+         */
+        private boolean enabled = false;
+
+        private Granularity granularity = Granularity.MONTH;
+
+        /**
+         * Number of partitions created ahead of the current one.
+         */
+        private int partitionsAhead = 2;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Granularity getGranularity() {
+            return granularity;
+        }
+
+        public void setGranularity(Granularity granularity) {
+            this.granularity = granularity;
+        }
+
+        public int getPartitionsAhead() {
+            return partitionsAhead;
+        }
+
+        public void setPartitionsAhead(int partitionsAhead) {
+            this.partitionsAhead = partitionsAhead;
+        }
+    }
+
+    public static class Archive {
+
+        /**
+         * Archive the audit events to files before purging them, otherwise they are only deleted.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Directory of the daily segment files.
+         */
+        private String directory = "audit-archive";
+
+        /**
+         * Rows fetched per round trip by the archive cursor. MySQL only streams with useCursorFetch=true in the URL.
+         */
+        private int fetchSize = 1000;
+
+        /**
+         * Events per segment file, deleted together once their file has been written.
+         */
+        private int chunkSize = 10000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        public int getFetchSize() {
+            return fetchSize;
+        }
+
+        public void setFetchSize(int fetchSize) {
+            this.fetchSize = fetchSize;
+        }
+
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        public void setChunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+    }
+
+    public static class Purge {
+
+        /**
+         * Number of audit events deleted per transaction.
+         */
+        private int chunkSize = 1000;
+
+        /**
+         * Pause between two chunks, to leave room for the other transactions.
+         */
+        private long pauseBetweenChunksMs = 100;
+
+        /**
+         * Log the progress every this many chunks.
+         */
+        private int progressLogInterval = 10;
+
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        public void setChunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+
+        public long getPauseBetweenChunksMs() {
+            return pauseBetweenChunksMs;
+        }
+
+        public void setPauseBetweenChunksMs(long pauseBetweenChunksMs) {
+            this.pauseBetweenChunksMs = pauseBetweenChunksMs;
+        }
+
+        public int getProgressLogInterval() {
+            return progressLogInterval;
+        }
+
+        public void setProgressLogInterval(int progressLogInterval) {
+            this.progressLogInterval = progressLogInterval;
+        }
+    }
+
+    public static class QuickSearch {
+
+        /**
+         * Search the search text columns with the MySQL full-text function instead of LIKE, requires the ngram
+         * full-text indexes of the columns.
+         */
+        private boolean fullText = false;
+
+        /**
+         * The string columns compare case insensitively, like with the default MySQL collations, so the prefix and
+         * exact matches of the quick search can use their index.
+         */
+        private boolean caseInsensitiveCollation = false;
+
+        private final Index index = new Index();
+
+        private final FanOut fanOut = new FanOut();
+
+        private final Export export = new Export();
+
+        public boolean isFullText() {
+            return fullText;
+        }
+
+        public void setFullText(boolean fullText) {
+            this.fullText = fullText;
+        }
+
+        public boolean isCaseInsensitiveCollation() {
+            return caseInsensitiveCollation;
+        }
+
+        public void setCaseInsensitiveCollation(boolean caseInsensitiveCollation) {
+            this.caseInsensitiveCollation = caseInsensitiveCollation;
+        }
+
+        public Index getIndex() {
+            return index;
+        }
+
+        public FanOut getFanOut() {
+            return fanOut;
+        }
+
+        public Export getExport() {
+            return export;
+        }
+    }
+
+    /**
+     * Streamed exports of the quick search results.
+     */
+    public static class Export {
+
+        /**
+         * Rows fetched per round trip, the persistence context is cleared after each of them.
+         */
+        private int fetchSize = 500;
+
+        /**
+         * An export stops after this number of rows.
+         */
+        private int maxRows = 100000;
+
+        public int getFetchSize() {
+            return fetchSize;
+        }
+
+        public void setFetchSize(int fetchSize) {
+            this.fetchSize = fetchSize;
+        }
+
+        public int getMaxRows() {
+            return maxRows;
+        }
+
+        public void setMaxRows(int maxRows) {
+            this.maxRows = maxRows;
+        }
+    }
+
+    /**
+     * In-memory n-gram index resolving quick searches to entity ids.
+     */
+    public static class Index {
+
+        private boolean enabled = false;
+
+        /**
+         * Above this number of matching entities the quick search falls back to LIKE predicates, rather than a huge
+         * IN list.
+         */
+        private int maxIds = 1000;
+
+        /**
+         * The index is rebuilt from the database on this schedule, to pick up the changes made by other nodes.
+         */
+        private String rebuildCron = "0 0 * * * *";
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxIds() {
+            return maxIds;
+        }
+
+        public void setMaxIds(int maxIds) {
+            this.maxIds = maxIds;
+        }
+
+        public String getRebuildCron() {
+            return rebuildCron;
+        }
+
+        public void setRebuildCron(String rebuildCron) {
+            this.rebuildCron = rebuildCron;
+        }
+    }
+
+    /**
+     * Parallel execution of the index-friendly quick search predicates, one id query each.
+     */
+    public static class FanOut {
+
+        private boolean enabled = false;
+
+        /**
+         * A term is searched with one id query per predicate from this number of predicates, all index-friendly.
+         */
+        private int minPredicates = 2;
+
+        /**
+         * Above this number of matching entities the quick search falls back to a single query.
+         */
+        private int maxIds = 1000;
+
+        private int poolSize = 4;
+
+        private int queueCapacity = 100;
+
+        private long timeoutMs = 5000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMinPredicates() {
+            return minPredicates;
+        }
+
+        public void setMinPredicates(int minPredicates) {
+            this.minPredicates = minPredicates;
+        }
+
+        public int getMaxIds() {
+            return maxIds;
+        }
+
+        public void setMaxIds(int maxIds) {
+            this.maxIds = maxIds;
+        }
+
+        public int getPoolSize() {
+            return poolSize;
+        }
+
+        public void setPoolSize(int poolSize) {
+            this.poolSize = poolSize;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public long getTimeoutMs() {
+            return timeoutMs;
+        }
+
+        public void setTimeoutMs(long timeoutMs) {
+            this.timeoutMs = timeoutMs;
+        }
+    }
 }
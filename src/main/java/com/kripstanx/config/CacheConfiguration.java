@@ -1,39 +1,45 @@
 package com.kripstanx.config;
 
-import tech.jhipster.config.JHipsterProperties;
 import java.time.Duration;
 import org.ehcache.config.builders.CacheConfigurationBuilder;
 import org.ehcache.config.builders.ExpiryPolicyBuilder;
 import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.config.units.EntryUnit;
+import org.ehcache.config.units.MemoryUnit;
+import org.ehcache.impl.serialization.PlainJavaSerializer;
 import org.ehcache.jsr107.Eh107Configuration;
 import org.springframework.boot.autoconfigure.cache.JCacheManagerCustomizer;
+import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
-// Don't forget to modify UserService if you turn caching on
-//@EnableCaching
+@EnableCaching
 public class CacheConfiguration {
 
-    private final javax.cache.configuration.Configuration<Object, Object> jcacheConfiguration;
+    private final javax.cache.configuration.Configuration<Object, Object> usersCacheConfiguration;
 
-    public CacheConfiguration(JHipsterProperties jHipsterProperties) {
-        JHipsterProperties.Cache.Ehcache ehcache =
-            jHipsterProperties.getCache().getEhcache();
+    public CacheConfiguration(ApplicationProperties applicationProperties) {
+        ApplicationProperties.TieredCache users = applicationProperties.getCache().getUsers();
+        ClassLoader classLoader = getClass().getClassLoader();
 
-        jcacheConfiguration = Eh107Configuration.fromEhcacheCacheConfiguration(
+        // the off-heap tier stores the entries serialized, cached users and their authorities are Serializable
+        usersCacheConfiguration = Eh107Configuration.fromEhcacheCacheConfiguration(
             CacheConfigurationBuilder.newCacheConfigurationBuilder(Object.class, Object.class,
-                ResourcePoolsBuilder.heap(ehcache.getMaxEntries()))
-                .withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(Duration.ofSeconds(ehcache.getTimeToLiveSeconds())))
+                ResourcePoolsBuilder.newResourcePoolsBuilder()
+                    .heap(users.getHeapMaxEntries(), EntryUnit.ENTRIES)
+                    .offheap(users.getOffheapMaxSizeMb(), MemoryUnit.MB))
+                .withKeySerializer(new PlainJavaSerializer<>(classLoader))
+                .withValueSerializer(new PlainJavaSerializer<>(classLoader))
+                .withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(Duration.ofSeconds(users.getTimeToLiveSeconds())))
                 .build());
     }
 
     @Bean
     public JCacheManagerCustomizer cacheManagerCustomizer() {
         return cm -> {
-            cm.createCache(com.kripstanx.repository.UserRepository.USERS_BY_USERNAME_CACHE, jcacheConfiguration);
-            cm.createCache(com.kripstanx.repository.UserRepository.USERS_BY_EMAIL_CACHE, jcacheConfiguration);
-
+            cm.createCache(com.kripstanx.repository.UserRepository.USERS_BY_USERNAME_CACHE, usersCacheConfiguration);
+            cm.createCache(com.kripstanx.repository.UserRepository.USERS_BY_EMAIL_CACHE, usersCacheConfiguration);
         };
     }
 }
@@ -0,0 +1,60 @@
+package com.kripstanx.config;
+
+import com.amazonaws.services.sqs.AmazonSQSClientBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kripstanx.service.cluster.ClusterInvalidationService;
+import com.kripstanx.service.cluster.InvalidationEventBus;
+import com.kripstanx.service.cluster.LoopbackInvalidationEventBus;
+import com.kripstanx.service.cluster.SqsInvalidationEventBus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class ClusterConfiguration {
+
+    private final Logger log = LoggerFactory.getLogger(ClusterConfiguration.class);
+
+    private final ApplicationProperties applicationProperties;
+
+    public ClusterConfiguration(ApplicationProperties applicationProperties) {
+        this.applicationProperties = applicationProperties;
+    }
+
+    /**
+     * Broadcast the invalidation events through SQS, when several nodes are running.
+     *
+     * @return the invalidation event bus, with its own queue created on start and deleted on stop
+     */
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    @ConditionalOnProperty(name = "application.cluster.invalidation.bus", havingValue = "sqs")
+    public SqsInvalidationEventBus sqsInvalidationEventBus(ObjectMapper objectMapper) {
+        ApplicationProperties.Invalidation invalidation = applicationProperties.getCluster().getInvalidation();
+        ApplicationProperties.Sqs sqs = invalidation.getSqs();
+        AmazonSQSClientBuilder builder = AmazonSQSClientBuilder.standard();
+        if (sqs.getRegion() != null) {
+            builder.withRegion(sqs.getRegion());
+        }
+        String nodeId = ClusterInvalidationService.getNodeId(applicationProperties);
+        log.debug("Starting SQS invalidation event bus for node {}", nodeId);
+        return new SqsInvalidationEventBus(builder.build(),
+                                           objectMapper,
+                                           sqs.getQueueNamePrefix(),
+                                           nodeId,
+                                           sqs.getMessageRetentionSeconds(),
+                                           invalidation.getBatchSize(),
+                                           invalidation.getMaxPending());
+    }
+
+    /**
+     * Deliver the invalidation events within this node only.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "application.cluster.invalidation.bus", havingValue = "loopback", matchIfMissing = true)
+    public InvalidationEventBus loopbackInvalidationEventBus() {
+        ApplicationProperties.Invalidation invalidation = applicationProperties.getCluster().getInvalidation();
+        return new LoopbackInvalidationEventBus(invalidation.getBatchSize(), invalidation.getMaxPending());
+    }
+}
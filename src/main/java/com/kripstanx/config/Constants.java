@@ -9,6 +9,7 @@ public final class Constants {
     public static final String LOGIN_REGEX = "^[_.@A-Za-z0-9-]*$";
 
     public static final String SYSTEM_ACCOUNT = "system";
+    public static final String ANONYMOUS_USER = "anonymousUser";
     public static final String DEFAULT_LANGUAGE = "en";
 
     private Constants() {}
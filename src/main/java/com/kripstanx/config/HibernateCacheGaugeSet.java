@@ -0,0 +1,50 @@
+package com.kripstanx.config;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * Hit, miss and put counts of the Hibernate second-level cache and query cache, in total and per region.
+ * <p>
+ * The counts are only collected when {@code hibernate.generate_statistics} is enabled.
+ */
+public class HibernateCacheGaugeSet implements MetricSet {
+
+    private final Statistics statistics;
+
+    public HibernateCacheGaugeSet(Statistics statistics) {
+        this.statistics = statistics;
+    }
+
+    @Override
+    public Map<String, Metric> getMetrics() {
+        Map<String, Metric> gauges = new HashMap<>();
+        gauges.put("second-level.hits", (Gauge<Long>) statistics::getSecondLevelCacheHitCount);
+        gauges.put("second-level.misses", (Gauge<Long>) statistics::getSecondLevelCacheMissCount);
+        gauges.put("second-level.puts", (Gauge<Long>) statistics::getSecondLevelCachePutCount);
+        gauges.put("query.hits", (Gauge<Long>) statistics::getQueryCacheHitCount);
+        gauges.put("query.misses", (Gauge<Long>) statistics::getQueryCacheMissCount);
+        gauges.put("query.puts", (Gauge<Long>) statistics::getQueryCachePutCount);
+        for (String region : statistics.getSecondLevelCacheRegionNames()) {
+            gauges.put(region + ".hits", regionGauge(region, CacheRegionStatistics::getHitCount));
+            gauges.put(region + ".misses", regionGauge(region, CacheRegionStatistics::getMissCount));
+            gauges.put(region + ".puts", regionGauge(region, CacheRegionStatistics::getPutCount));
+            gauges.put(region + ".size", regionGauge(region, CacheRegionStatistics::getElementCountInMemory));
+        }
+        return gauges;
+    }
+
+    private Gauge<Long> regionGauge(String region, ToLongFunction<CacheRegionStatistics> count) {
+        return () -> {
+            CacheRegionStatistics regionStatistics = statistics.getCacheRegionStatistics(region);
+            return regionStatistics != null ? count.applyAsLong(regionStatistics) : 0L;
+        };
+    }
+}
@@ -10,6 +10,7 @@ import com.codahale.metrics.jvm.*;
 import com.ryantenney.metrics.spring.config.annotation.EnableMetrics;
 import com.ryantenney.metrics.spring.config.annotation.MetricsConfigurerAdapter;
 import com.zaxxer.hikari.HikariDataSource;
+import org.hibernate.SessionFactory;
 import tech.jhipster.config.JHipsterProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,6 +21,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
 import java.lang.management.ManagementFactory;
 import java.util.concurrent.TimeUnit;
 
@@ -36,6 +38,8 @@ public class MetricsConfiguration extends MetricsConfigurerAdapter {
 
     private static final String PROP_METRIC_REG_JCACHE_STATISTICS = "jcache.statistics";
 
+    private static final String PROP_METRIC_REG_HIBERNATE_CACHE = "hibernate.cache";
+
     private final Logger log = LoggerFactory.getLogger(MetricsConfiguration.class);
 
     private MetricRegistry metricRegistry = new MetricRegistry();
@@ -46,6 +50,8 @@ public class MetricsConfiguration extends MetricsConfigurerAdapter {
 
     private HikariDataSource hikariDataSource;
 
+    private EntityManagerFactory entityManagerFactory;
+
     private final int reportFrequency = 60;
 
     public MetricsConfiguration(JHipsterProperties jHipsterProperties) {
@@ -57,6 +63,11 @@ public class MetricsConfiguration extends MetricsConfigurerAdapter {
         this.hikariDataSource = hikariDataSource;
     }
 
+    @Autowired(required = false)
+    public void setEntityManagerFactory(EntityManagerFactory entityManagerFactory) {
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
     @Override
     @Bean("metricRegistry")
     public MetricRegistry getMetricRegistry() {
@@ -86,6 +97,12 @@ public class MetricsConfiguration extends MetricsConfigurerAdapter {
             hikariDataSource.setMetricsTrackerFactory(null);
             hikariDataSource.setMetricRegistry(metricRegistry);
         }
+        if (entityManagerFactory != null) {
+            log.debug("Monitoring the Hibernate caches");
+            metricRegistry.register(PROP_METRIC_REG_HIBERNATE_CACHE,
+                                    new HibernateCacheGaugeSet(entityManagerFactory.unwrap(SessionFactory.class)
+                                                                                   .getStatistics()));
+        }
         log.debug("Initializing Metrics JMX reporting");
         JmxReporter jmxReporter = JmxReporter.forRegistry(metricRegistry).build();
         jmxReporter.start();
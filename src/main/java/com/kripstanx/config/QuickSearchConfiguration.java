@@ -0,0 +1,48 @@
+package com.kripstanx.config;
+
+import com.kripstanx.domain.User;
+import com.kripstanx.domain.User_;
+import com.kripstanx.service.builder.QuickSearchMatchMode;
+import com.kripstanx.service.builder.QuickSearchRegistration;
+import com.kripstanx.service.search.QuickSearchFanOut;
+import com.kripstanx.service.search.QuickSearchIndex;
+import com.kripstanx.service.search.QuickSearchIndexDefinition;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * The quick search attributes of the entities, rendered to their search text column on write, and the entities indexed
+ * for quick search, see {@link QuickSearchIndex}.
+ */
+@Configuration
+public class QuickSearchConfiguration {
+
+    @Bean
+    public QuickSearchRegistration<User> userQuickSearchRegistration(QuickSearchIndex quickSearchIndex,
+                                                                     ObjectProvider<QuickSearchFanOut> quickSearchFanOut,
+                                                                     ApplicationProperties applicationProperties) {
+        ApplicationProperties.QuickSearch properties = applicationProperties.getQuickSearch();
+        return QuickSearchRegistration.of(User.class, builder -> {
+            // every attribute is matched by prefix, so each predicate can use the index of its column, and the n-gram
+            // index and the search text column match by prefix too; the fan-out is looked up on first use, it needs
+            // the entity manager factory, whose entity listeners need this registration
+            builder.multiTerm()
+                   .addStringAttribute(User_.username, QuickSearchMatchMode.PREFIX)
+                   .addStringAttribute(User_.firstName, QuickSearchMatchMode.PREFIX)
+                   .addStringAttribute(User_.lastName, QuickSearchMatchMode.PREFIX)
+                   .addStringAttribute(User_.email, QuickSearchMatchMode.PREFIX)
+                   .useIndex(quickSearchIndex, User.class)
+                   .useFanOut(quickSearchFanOut.getObject(), User.class)
+                   .useSearchTextColumn(User_.searchText, properties.isFullText());
+            if (properties.isCaseInsensitiveCollation()) {
+                builder.useCaseInsensitiveCollation();
+            }
+        });
+    }
+
+    @Bean
+    public QuickSearchIndexDefinition<User> userQuickSearchIndexDefinition() {
+        return QuickSearchIndexDefinition.of(User.class, User::getId, User::getSearchText);
+    }
+}
@@ -0,0 +1,21 @@
+package com.kripstanx.config;
+
+import com.kripstanx.service.builder.QuickSearchSpecBuilder;
+import org.hibernate.boot.MetadataBuilder;
+import org.hibernate.boot.spi.MetadataBuilderContributor;
+import org.hibernate.dialect.function.SQLFunctionTemplate;
+import org.hibernate.type.StandardBasicTypes;
+
+/**
+ * Registers the MySQL full-text function of the quick search, configured as the
+ * {@code hibernate.metadata_builder_contributor} of the mysql profile.
+ */
+public class QuickSearchFunctionsContributor implements MetadataBuilderContributor {
+
+    @Override
+    public void contribute(MetadataBuilder metadataBuilder) {
+        metadataBuilder.applySqlFunction(QuickSearchSpecBuilder.FULL_TEXT_MATCH_FUNCTION,
+                                         new SQLFunctionTemplate(StandardBasicTypes.DOUBLE,
+                                                                 "match(?1) against (?2 in boolean mode)"));
+    }
+}
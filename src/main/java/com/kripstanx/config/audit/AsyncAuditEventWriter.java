@@ -0,0 +1,235 @@
+package com.kripstanx.config.audit;
+
+import com.kripstanx.config.ApplicationProperties;
+import com.kripstanx.domain.AuditEventDataConverter;
+import com.kripstanx.domain.PersistentAuditEvent;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManagerFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the audit events in the background, so the request that raised them does not wait on the database.
+ * <p>
+ * Events are buffered in a bounded queue and inserted with JDBC batches, in their own transaction. Ids are allocated
+ * by the Hibernate generator of {@link PersistentAuditEvent}, so they come from the pooled sequence shared with the
+ * entity. When the queue is full the event is written synchronously by the caller.
+ * <p>
+ * A batch which cannot be written is retried with a backoff, its events staying pending. The events of a batch still
+ * failing after the retries are logged one by one before being dropped, so the audit trail can be restored from the log.
+ */
+@Component
+public class AsyncAuditEventWriter {
+
+    private static final String INSERT_EVENT_SQL =
+        "insert into persistent_audit_event (event_id, principal, event_date, event_type, event_data) values (?, ?, ?, ?, ?)";
+
+    private final Logger log = LoggerFactory.getLogger(AsyncAuditEventWriter.class);
+
+    private final SessionFactoryImplementor sessionFactory;
+
+    private final IdentifierGenerator identifierGenerator;
+
+    private final BlockingQueue<PersistentAuditEvent> queue;
+
+    private final int batchSize;
+
+    private final long flushIntervalMs;
+
+    private final int writeRetries;
+
+    private final long retryBackoffMs;
+
+    /**
+     * The batch being written, still reported as pending until it has been committed.
+     */
+    private volatile List<PersistentAuditEvent> inFlight = Collections.emptyList();
+
+    private volatile boolean running;
+
+    private Thread writer;
+
+    public AsyncAuditEventWriter(EntityManagerFactory entityManagerFactory, ApplicationProperties applicationProperties) {
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactory.class).unwrap(SessionFactoryImplementor.class);
+        this.identifierGenerator = sessionFactory.getMetamodel()
+                                                 .entityPersister(PersistentAuditEvent.class)
+                                                 .getIdentifierGenerator();
+        ApplicationProperties.Audit audit = applicationProperties.getAudit();
+        this.queue = new ArrayBlockingQueue<>(audit.getBufferSize());
+        this.batchSize = audit.getBatchSize();
+        this.flushIntervalMs = audit.getFlushIntervalMs();
+        this.writeRetries = audit.getWriteRetries();
+        this.retryBackoffMs = audit.getRetryBackoffMs();
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        writer = new Thread(this::run, "audit-event-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Stop the background writer and write the remaining events.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        writer.interrupt();
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+        List<PersistentAuditEvent> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        for (int from = 0; from < remaining.size(); from += batchSize) {
+            List<PersistentAuditEvent> events = remaining.subList(from, Math.min(from + batchSize, remaining.size()));
+            try {
+                write(events);
+            } catch (RuntimeException e) {
+                drop(events, e);
+            }
+        }
+    }
+
+    /**
+     * Queue an event for the background writer, or write it right away if the queue is full. A failure of the
+     * synchronous write is thrown to the caller.
+     */
+    public void add(PersistentAuditEvent event) {
+        if (!queue.offer(event)) {
+            log.warn("Audit event queue full, writing {} synchronously", event);
+            write(Collections.singletonList(event));
+        }
+    }
+
+    /**
+     * @return the events which have been added but are not committed yet, their id is set once they are written
+     */
+    public List<PersistentAuditEvent> getPendingEvents() {
+        List<PersistentAuditEvent> pending = new ArrayList<>(inFlight);
+        pending.addAll(queue);
+        return pending;
+    }
+
+    private void run() {
+        List<PersistentAuditEvent> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                PersistentAuditEvent first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    PersistentAuditEvent next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next != null) {
+                        batch.add(next);
+                    }
+                }
+                inFlight = new ArrayList<>(batch);
+                writeWithRetry(batch);
+            } catch (InterruptedException e) {
+                // stopping, the remaining events are written by stop()
+                List<PersistentAuditEvent> unqueued = new ArrayList<>();
+                batch.stream().filter(event -> !queue.offer(event)).forEach(unqueued::add);
+                if (!unqueued.isEmpty()) {
+                    drop(unqueued, null);
+                }
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Audit event writer failed", e);
+            } finally {
+                batch.clear();
+                inFlight = Collections.emptyList();
+            }
+        }
+    }
+
+    /**
+     * Retry a batch which cannot be written with a doubling backoff, e.g. over a failover of the database.
+     */
+    private void writeWithRetry(List<PersistentAuditEvent> events) throws InterruptedException {
+        long backoffMs = retryBackoffMs;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                write(events);
+                return;
+            } catch (RuntimeException e) {
+                if (attempt >= writeRetries) {
+                    drop(events, e);
+                    return;
+                }
+                log.warn("Could not write {} audit events, retrying in {} ms: {}", events.size(), backoffMs, e.getMessage());
+                Thread.sleep(backoffMs);
+                backoffMs *= 2;
+            }
+        }
+    }
+
+    /**
+     * Log the events which could not be written, with their data.
+     */
+    private void drop(List<PersistentAuditEvent> events, RuntimeException cause) {
+        log.error("Dropping {} audit events which could not be written", events.size(), cause);
+        for (PersistentAuditEvent event : events) {
+            log.error("Dropped audit event {} with data {}", event, event.getData());
+        }
+    }
+
+    private void write(List<PersistentAuditEvent> events) {
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            Transaction transaction = session.beginTransaction();
+            try {
+                for (PersistentAuditEvent event : events) {
+                    if (event.getId() == null) {
+                        event.setId((Long) identifierGenerator.generate((SharedSessionContractImplementor) session, event));
+                    }
+                }
+                session.doWork(connection -> insert(connection, events));
+                transaction.commit();
+            } catch (RuntimeException e) {
+                transaction.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private void insert(Connection connection, List<PersistentAuditEvent> events) throws SQLException {
+        try (PreparedStatement insertEvent = connection.prepareStatement(INSERT_EVENT_SQL)) {
+            for (PersistentAuditEvent event : events) {
+                insertEvent.setLong(1, event.getId());
+                insertEvent.setString(2, event.getPrincipal());
+                insertEvent.setTimestamp(3, event.getAuditEventDate() != null ? Timestamp.from(event.getAuditEventDate()) : null);
+                insertEvent.setString(4, event.getAuditEventType());
+                insertEvent.setBytes(5, AuditEventDataConverter.encode(event.getData()));
+                insertEvent.addBatch();
+            }
+            insertEvent.executeBatch();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.kripstanx.config.liquibase;
+
+import com.kripstanx.domain.AuditEventDataConverter;
+import liquibase.change.custom.CustomTaskChange;
+import liquibase.database.Database;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.CustomChangeException;
+import liquibase.exception.ValidationErrors;
+import liquibase.resource.ResourceAccessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Moves the data of the audit events from the {@code persistent_audit_evt_data} rows to the {@code event_data} column,
+ * encoded by {@link AuditEventDataConverter}.
+ * <p>
+ * The events are converted in batches of consecutive ids, each batch is committed on its own. The conversion only
+ * reads the data rows, so a run interrupted half way is simply started again.
+ */
+public class AuditEventDataMigration implements CustomTaskChange {
+
+    private static final String SELECT_BATCH_END_SQL =
+        "select distinct event_id from persistent_audit_evt_data where event_id > ? order by event_id";
+
+    private static final String SELECT_DATA_SQL =
+        "select event_id, name, value from persistent_audit_evt_data where event_id > ? and event_id <= ? order by event_id";
+
+    private static final String UPDATE_EVENT_SQL =
+        "update persistent_audit_event set event_data = ? where event_id = ?";
+
+    private final Logger log = LoggerFactory.getLogger(AuditEventDataMigration.class);
+
+    private int batchSize = 1000;
+
+    private long migrated;
+
+    public void setBatchSize(String batchSize) {
+        this.batchSize = Integer.parseInt(batchSize);
+    }
+
+    @Override
+    public void execute(Database database) throws CustomChangeException {
+        Connection connection = ((JdbcConnection) database.getConnection()).getUnderlyingConnection();
+        try {
+            long fromId = Long.MIN_VALUE;
+            Long toId;
+            while ((toId = findBatchEnd(connection, fromId)) != null) {
+                migrated += migrateBatch(connection, fromId, toId);
+                connection.commit();
+                log.debug("Migrated the audit event data up to id {}", toId);
+                fromId = toId;
+            }
+        } catch (SQLException e) {
+            throw new CustomChangeException("Could not migrate the audit event data", e);
+        }
+    }
+
+    /**
+     * @return the last event id of the batch starting after the given id, null if there is none
+     */
+    private Long findBatchEnd(Connection connection, long fromId) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_BATCH_END_SQL)) {
+            statement.setMaxRows(batchSize);
+            statement.setLong(1, fromId);
+            Long toId = null;
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    toId = resultSet.getLong(1);
+                }
+            }
+            return toId;
+        }
+    }
+
+    private int migrateBatch(Connection connection, long fromId, long toId) throws SQLException {
+        Map<Long, Map<String, String>> data = new LinkedHashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_DATA_SQL)) {
+            statement.setLong(1, fromId);
+            statement.setLong(2, toId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    data.computeIfAbsent(resultSet.getLong(1), id -> new HashMap<>())
+                        .put(resultSet.getString(2), resultSet.getString(3));
+                }
+            }
+        }
+        try (PreparedStatement statement = connection.prepareStatement(UPDATE_EVENT_SQL)) {
+            for (Map.Entry<Long, Map<String, String>> entry : data.entrySet()) {
+                statement.setBytes(1, AuditEventDataConverter.encode(entry.getValue()));
+                statement.setLong(2, entry.getKey());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+        return data.size();
+    }
+
+    @Override
+    public String getConfirmationMessage() {
+        return "Migrated the data of " + migrated + " audit events";
+    }
+
+    @Override
+    public void setUp() {
+        // nothing to set up
+    }
+
+    @Override
+    public void setFileOpener(ResourceAccessor resourceAccessor) {
+        // no resources
+    }
+
+    @Override
+    public ValidationErrors validate(Database database) {
+        ValidationErrors errors = new ValidationErrors();
+        if (batchSize <= 0) {
+            errors.addError("batchSize must be positive");
+        }
+        return errors;
+    }
+}
@@ -29,6 +29,18 @@ public class ArchiveAndPurgeLog implements Serializable {
     @Column(name = "operation_time")
     private Instant operationTime;
 
+    @Column(name = "archived_row_count")
+    private Long archivedRowCount;
+
+    @Column(name = "bytes_written")
+    private Long bytesWritten;
+
+    /**
+     * Uncompressed size divided by compressed size of the archived rows.
+     */
+    @Column(name = "compression_ratio")
+    private Double compressionRatio;
+
     public Long getId() {
         return id;
     }
@@ -89,6 +101,45 @@ public class ArchiveAndPurgeLog implements Serializable {
         return this;
     }
 
+    public Long getArchivedRowCount() {
+        return archivedRowCount;
+    }
+
+    public void setArchivedRowCount(Long archivedRowCount) {
+        this.archivedRowCount = archivedRowCount;
+    }
+
+    public ArchiveAndPurgeLog archivedRowCount(Long archivedRowCount) {
+        this.archivedRowCount = archivedRowCount;
+        return this;
+    }
+
+    public Long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public void setBytesWritten(Long bytesWritten) {
+        this.bytesWritten = bytesWritten;
+    }
+
+    public ArchiveAndPurgeLog bytesWritten(Long bytesWritten) {
+        this.bytesWritten = bytesWritten;
+        return this;
+    }
+
+    public Double getCompressionRatio() {
+        return compressionRatio;
+    }
+
+    public void setCompressionRatio(Double compressionRatio) {
+        this.compressionRatio = compressionRatio;
+    }
+
+    public ArchiveAndPurgeLog compressionRatio(Double compressionRatio) {
+        this.compressionRatio = compressionRatio;
+        return this;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -117,6 +168,9 @@ public class ArchiveAndPurgeLog implements Serializable {
         sb.append(", processedRowCount=").append(processedRowCount);
         sb.append(", reductionMb=").append(reductionMb);
         sb.append(", operationTime=").append(operationTime);
+        sb.append(", archivedRowCount=").append(archivedRowCount);
+        sb.append(", bytesWritten=").append(bytesWritten);
+        sb.append(", compressionRatio=").append(compressionRatio);
         sb.append('}');
         return sb.toString();
     }
@@ -0,0 +1,144 @@
+package com.kripstanx.domain;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores the data of an audit event in a single binary column instead of one row per entry.
+ * <p>
+ * Format: a version byte, the number of entries, then for each entry its key and its value. Keys of the dictionary
+ * are written as their one byte code, other keys as 0 followed by the string. Strings are written as their UTF-8
+ * length plus one (0 for null) followed by their bytes. Numbers are unsigned varints. An empty map is stored as null.
+ * <p>
+ * Codes are stored in the database: the dictionary may only be appended to.
+ */
+@Converter
+public class AuditEventDataConverter implements AttributeConverter<Map<String, String>, byte[]> {
+
+    private static final byte VERSION = 1;
+
+    private static final List<String> DICTIONARY = Arrays.asList(
+        null, // 0 marks a key written as a string
+        "remoteAddress",
+        "sessionId",
+        "type",
+        "message"
+    );
+
+    @Override
+    public byte[] convertToDatabaseColumn(Map<String, String> data) {
+        return encode(data);
+    }
+
+    @Override
+    public Map<String, String> convertToEntityAttribute(byte[] bytes) {
+        return decode(bytes);
+    }
+
+    public static byte[] encode(Map<String, String> data) {
+        if (data == null || data.isEmpty()) {
+            return null;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 * data.size());
+        out.write(VERSION);
+        writeVarint(out, data.size());
+        for (Map.Entry<String, String> entry : data.entrySet()) {
+            int code = entry.getKey() != null ? DICTIONARY.indexOf(entry.getKey()) : -1;
+            if (code > 0) {
+                out.write(code);
+            } else {
+                out.write(0);
+                writeString(out, entry.getKey());
+            }
+            writeString(out, entry.getValue());
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the bytes are not in the format of {@link #encode(Map)}
+     */
+    public static Map<String, String> decode(byte[] bytes) {
+        Map<String, String> data = new HashMap<>();
+        if (bytes == null || bytes.length == 0) {
+            return data;
+        }
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        try {
+            byte version = in.get();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unknown audit event data version " + version);
+            }
+            int size = readVarint(in);
+            for (int i = 0; i < size; i++) {
+                int code = in.get() & 0xFF;
+                String key;
+                if (code == 0) {
+                    key = readString(in);
+                } else if (code < DICTIONARY.size()) {
+                    key = DICTIONARY.get(code);
+                } else {
+                    throw new IllegalArgumentException("Unknown audit event data key code " + code);
+                }
+                data.put(key, readString(in));
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated audit event data", e);
+        }
+        return data;
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        if (value == null) {
+            out.write(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length + 1);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = readVarint(in);
+        if (length == 0) {
+            return null;
+        }
+        if (length - 1 > in.remaining()) {
+            throw new IllegalArgumentException("Truncated audit event data");
+        }
+        String value = new String(in.array(), in.position(), length - 1, StandardCharsets.UTF_8);
+        in.position(in.position() + length - 1);
+        return value;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) {
+                    throw new IllegalArgumentException("Invalid audit event data length");
+                }
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Invalid audit event data varint");
+    }
+}
@@ -35,10 +35,8 @@ public class PersistentAuditEvent implements Serializable {
     @Column(name = "event_type")
     private String auditEventType;
 
-    @ElementCollection
-    @MapKeyColumn(name = "name")
-    @Column(name = "value")
-    @CollectionTable(name = "persistent_audit_evt_data", joinColumns = @JoinColumn(name = "event_id"))
+    @Convert(converter = AuditEventDataConverter.class)
+    @Column(name = "event_data")
     private Map<String, String> data = new HashMap<>();
 
     public Long getId() {
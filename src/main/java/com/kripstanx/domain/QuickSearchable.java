@@ -0,0 +1,24 @@
+package com.kripstanx.domain;
+
+/**
+ * An entity with a search text column: its quick search attributes rendered, normalized and joined on write, so a
+ * quick search is a single predicate on that column instead of an expression per attribute and row.
+ *
+ * @see com.kripstanx.service.builder.QuickSearchSpecBuilder#useSearchTextColumn
+ */
+public interface QuickSearchable {
+
+    /**
+     * Separates the attributes in the search text, so a search does not match across two attributes.
+     */
+    char SEPARATOR = '\u001f';
+
+    /**
+     * Maximum length of the search text column.
+     */
+    int SEARCH_TEXT_MAX_LENGTH = 1024;
+
+    String getSearchText();
+
+    void setSearchText(String searchText);
+}
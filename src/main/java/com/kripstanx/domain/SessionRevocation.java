@@ -0,0 +1,83 @@
+package com.kripstanx.domain;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * The last revocation of the sessions of a username, so the revocations outlive a restart, and the users who have
+ * been deleted or renamed since.
+ */
+@Entity
+@Table(name = "session_revocation")
+public class SessionRevocation implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @NotNull
+    @Size(min = 1, max = 50)
+    @Column(name = "username", length = 50, nullable = false)
+    private String username;
+
+    @NotNull
+    @Column(name = "revoked_at", nullable = false)
+    private Instant revokedAt;
+
+    public String getUsername() {
+        return username;
+    }
+
+    public SessionRevocation username(String username) {
+        this.username = username;
+        return this;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public Instant getRevokedAt() {
+        return revokedAt;
+    }
+
+    public SessionRevocation revokedAt(Instant revokedAt) {
+        this.revokedAt = revokedAt;
+        return this;
+    }
+
+    public void setRevokedAt(Instant revokedAt) {
+        this.revokedAt = revokedAt;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        SessionRevocation sessionRevocation = (SessionRevocation) o;
+        if (sessionRevocation.getUsername() == null || getUsername() == null) {
+            return false;
+        }
+        return Objects.equals(getUsername(), sessionRevocation.getUsername());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(getUsername());
+    }
+
+    @Override
+    public String toString() {
+        return "SessionRevocation{" +
+                "username='" + getUsername() + "'" +
+                ", revokedAt='" + getRevokedAt() + "'" +
+                "}";
+    }
+}
@@ -1,6 +1,8 @@
 package com.kripstanx.domain;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.kripstanx.service.search.QuickSearchIndexListener;
+import com.kripstanx.service.search.QuickSearchTextListener;
 import java.io.Serializable;
 import java.time.Instant;
 import java.util.HashSet;
@@ -13,10 +15,14 @@ import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
 import org.apache.commons.lang3.StringUtils;
 import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 @Entity
 @Table(name = "user")
-public class User extends AbstractAuditingEntity implements Serializable {
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@EntityListeners({ QuickSearchTextListener.class, QuickSearchIndexListener.class })
+public class User extends AbstractAuditingEntity implements Serializable, QuickSearchable {
 
     public static final long serialVersionUID = 1L;
 
@@ -87,6 +93,10 @@ public class User extends AbstractAuditingEntity implements Serializable {
     @Column(name = "password_expiration_date")
     private Instant passwordExpirationDate = null;
 
+    @JsonIgnore
+    @Column(name = "search_text", length = SEARCH_TEXT_MAX_LENGTH)
+    private String searchText;
+
     @JsonIgnore
     @ManyToMany
     @JoinTable(
@@ -94,6 +104,7 @@ public class User extends AbstractAuditingEntity implements Serializable {
         joinColumns = { @JoinColumn(name = "user_id", referencedColumnName = "id") },
         inverseJoinColumns = { @JoinColumn(name = "authority_name", referencedColumnName = "name") }
     )
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     @BatchSize(size = 20)
     private Set<Authority> authorities = new HashSet<>();
 
@@ -225,6 +236,16 @@ public class User extends AbstractAuditingEntity implements Serializable {
         this.passwordExpirationDate = passwordExpirationDate;
     }
 
+    @Override
+    public String getSearchText() {
+        return searchText;
+    }
+
+    @Override
+    public void setSearchText(String searchText) {
+        this.searchText = searchText;
+    }
+
     public Set<Authority> getAuthorities() {
         return authorities;
     }
@@ -0,0 +1,101 @@
+package com.kripstanx.domain;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * Login attempts of a user, used for the lockout and inactivity checks instead of the audit history.
+ */
+@Entity
+@Table(name = "user_login_state")
+public class UserLoginState implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @NotNull
+    @Size(min = 1, max = 50)
+    @Column(name = "username", length = 50, nullable = false)
+    private String username;
+
+    /**
+     * Number of failed logins since the last successful one.
+     */
+    @Column(name = "failed_attempts", nullable = false)
+    private int failedAttempts;
+
+    @Column(name = "last_success_date")
+    private Instant lastSuccessDate;
+
+    public String getUsername() {
+        return username;
+    }
+
+    public UserLoginState username(String username) {
+        this.username = username;
+        return this;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public int getFailedAttempts() {
+        return failedAttempts;
+    }
+
+    public UserLoginState failedAttempts(int failedAttempts) {
+        this.failedAttempts = failedAttempts;
+        return this;
+    }
+
+    public void setFailedAttempts(int failedAttempts) {
+        this.failedAttempts = failedAttempts;
+    }
+
+    public Instant getLastSuccessDate() {
+        return lastSuccessDate;
+    }
+
+    public UserLoginState lastSuccessDate(Instant lastSuccessDate) {
+        this.lastSuccessDate = lastSuccessDate;
+        return this;
+    }
+
+    public void setLastSuccessDate(Instant lastSuccessDate) {
+        this.lastSuccessDate = lastSuccessDate;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        UserLoginState userLoginState = (UserLoginState) o;
+        if (userLoginState.getUsername() == null || getUsername() == null) {
+            return false;
+        }
+        return Objects.equals(getUsername(), userLoginState.getUsername());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(getUsername());
+    }
+
+    @Override
+    public String toString() {
+        return "UserLoginState{" +
+                "username='" + getUsername() + "'" +
+                ", failedAttempts=" + getFailedAttempts() +
+                ", lastSuccessDate='" + getLastSuccessDate() + "'" +
+                "}";
+    }
+}
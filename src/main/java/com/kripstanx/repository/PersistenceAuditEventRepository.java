@@ -5,6 +5,8 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.time.Instant;
 import java.util.List;
@@ -35,4 +37,42 @@ public interface PersistenceAuditEventRepository extends JpaRepository<Persisten
                                                                                                 String type);
 
     Page<PersistentAuditEvent> findAllByAuditEventDateBetween(Instant fromDate, Instant toDate, Pageable pageable);
+
+    /**
+     * Keyset pagination, latest first: the dated events after the given one in (auditEventDate desc, id desc) order,
+     * a range scan of idx_persistent_audit_event_date. The pageable only limits the number of rows, there is no offset
+     * and no count query. The events without a date follow once these are exhausted, see
+     * {@link #findWithoutDateAfterCursor(Long, Pageable)}.
+     */
+    @Query("select e from PersistentAuditEvent e " +
+           "where e.auditEventDate < :date or (e.auditEventDate = :date and e.id < :id) " +
+           "order by e.auditEventDate desc, e.id desc")
+    List<PersistentAuditEvent> findAfterCursor(@Param("date") Instant date, @Param("id") Long id, Pageable pageable);
+
+    /**
+     * Keyset pagination after an event without a date, those are listed last.
+     */
+    @Query("select e from PersistentAuditEvent e where e.auditEventDate is null and e.id < :id order by e.id desc")
+    List<PersistentAuditEvent> findWithoutDateAfterCursor(@Param("id") Long id, Pageable pageable);
+
+    /**
+     * The first slice of {@link #findAfterCursor(Instant, Long, Pageable)}.
+     */
+    @Query("select e from PersistentAuditEvent e where e.auditEventDate is not null " +
+           "order by e.auditEventDate desc, e.id desc")
+    List<PersistentAuditEvent> findAllWithDateOrderByAuditEventDateDescIdDesc(Pageable pageable);
+
+    @Query("select e from PersistentAuditEvent e " +
+           "where e.auditEventDate between :fromDate and :toDate " +
+           "and (e.auditEventDate < :date or (e.auditEventDate = :date and e.id < :id)) " +
+           "order by e.auditEventDate desc, e.id desc")
+    List<PersistentAuditEvent> findBetweenAfterCursor(@Param("fromDate") Instant fromDate,
+                                                      @Param("toDate") Instant toDate,
+                                                      @Param("date") Instant date,
+                                                      @Param("id") Long id,
+                                                      Pageable pageable);
+
+    List<PersistentAuditEvent> findAllByAuditEventDateBetweenOrderByAuditEventDateDescIdDesc(Instant fromDate,
+                                                                                            Instant toDate,
+                                                                                            Pageable pageable);
 }
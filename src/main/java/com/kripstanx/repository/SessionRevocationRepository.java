@@ -0,0 +1,19 @@
+package com.kripstanx.repository;
+
+import com.kripstanx.domain.SessionRevocation;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+
+/**
+ * Spring Data JPA repository for the SessionRevocation entity.
+ */
+public interface SessionRevocationRepository extends JpaRepository<SessionRevocation, String> {
+
+    @Modifying
+    @Query("delete from SessionRevocation r where r.revokedAt < :instant")
+    int deleteRevokedBefore(@Param("instant") Instant instant);
+}
@@ -0,0 +1,64 @@
+package com.kripstanx.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Approximate row counts from the table statistics of the database, a cheap alternative to {@code count(*)} on large
+ * tables. Only MySQL is supported, other databases have no estimate.
+ */
+@Repository
+public class TableStatisticsRepository {
+
+    private final Logger log = LoggerFactory.getLogger(TableStatisticsRepository.class);
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final DataSource dataSource;
+
+    private volatile Boolean mySql;
+
+    public TableStatisticsRepository(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * @param tableName the name of the table
+     * @return the estimated number of rows of the table, empty if there is no estimate
+     */
+    public Optional<Long> estimateRowCount(String tableName) {
+        if (!isMySql()) {
+            return Optional.empty();
+        }
+        @SuppressWarnings("unchecked")
+        List<Number> rows = entityManager
+            .createNativeQuery("select table_rows from information_schema.tables " +
+                               "where table_schema = database() and table_name = :tableName")
+            .setParameter("tableName", tableName)
+            .getResultList();
+        return rows.stream().filter(row -> row != null).findFirst().map(Number::longValue);
+    }
+
+    private boolean isMySql() {
+        if (mySql == null) {
+            try (Connection connection = dataSource.getConnection()) {
+                mySql = connection.getMetaData().getDatabaseProductName().toLowerCase(Locale.ROOT).contains("mysql");
+            } catch (SQLException e) {
+                log.warn("Could not detect the database, no table statistics: {}", e.getMessage());
+                return false;
+            }
+        }
+        return mySql;
+    }
+}
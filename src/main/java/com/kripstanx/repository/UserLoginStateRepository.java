@@ -0,0 +1,23 @@
+package com.kripstanx.repository;
+
+import com.kripstanx.domain.UserLoginState;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import javax.persistence.LockModeType;
+import java.util.Optional;
+
+/**
+ * Spring Data JPA repository for the UserLoginState entity.
+ */
+public interface UserLoginStateRepository extends JpaRepository<UserLoginState, String> {
+
+    /**
+     * Read the state of a user and lock its row until the end of the transaction.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select s from UserLoginState s where s.username = :username")
+    Optional<UserLoginState> findOneForUpdate(@Param("username") String username);
+}
@@ -4,6 +4,7 @@ import com.kripstanx.domain.User;
 import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
+import javax.persistence.LockModeType;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -27,6 +28,13 @@ public interface UserRepository extends JpaRepository<User, Long> {
 
     Optional<User> findOneByUsername(String username);
 
+    /**
+     * Read a user and lock its row until the end of the transaction.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select u from User u where u.username = :username")
+    Optional<User> findOneForUpdateByUsername(@Param("username") String username);
+
     @EntityGraph(attributePaths = "authorities")
     Optional<User> findOneWithAuthoritiesById(Long id);
 
@@ -43,10 +51,22 @@ public interface UserRepository extends JpaRepository<User, Long> {
 
     Page<User> findAllByIdNotNullAndActiveIndicatorIsTrue(Pageable pageable);
 
-    @Modifying
-    @Query(
-        nativeQuery = true,
-        value = "UPDATE user set jwt_token2 = NULL, jwt_token2_expires_at = NULL WHERE jwt_token2_expires_at IS NOT NULL AND jwt_token2_expires_at <= :now"
-    )
-    void clearTemporalJwtTokens(@Param("now") Instant now);
+    /**
+     * Keyset pagination: the users after the given one in (username, id) order, without offset and count query.
+     */
+    @Query("select u from User u where u.username > :username or (u.username = :username and u.id > :id) " +
+           "order by u.username, u.id")
+    List<User> findAfterCursor(@Param("username") String username, @Param("id") Long id, Pageable pageable);
+
+    List<User> findAllByOrderByUsernameAscIdAsc(Pageable pageable);
+
+    @Query("select u.username from User u where u.jwtToken is null or u.activeIndicator = false")
+    List<String> findAllUsernamesWithoutActiveSession();
+
+    /**
+     * @return the ids of the users whose previous token has expired, see
+     * {@link com.kripstanx.security.SessionService#removeExpiredTemporaryJwtTokens()}
+     */
+    @Query("select u.id from User u where u.jwtToken2ExpiresAt is not null and u.jwtToken2ExpiresAt <= :now")
+    List<Long> findAllIdsWithExpiredTemporalJwtToken(@Param("now") Instant now);
 }
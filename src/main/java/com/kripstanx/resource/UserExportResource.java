@@ -0,0 +1,59 @@
+package com.kripstanx.resource;
+
+import com.kripstanx.domain.User;
+import com.kripstanx.security.AuthoritiesConstants;
+import com.kripstanx.service.UserService;
+import com.kripstanx.service.search.ExportFormat;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ * Streamed exports of the users matching a quick search.
+ */
+@RestController
+@RequestMapping("/api/admin")
+public class UserExportResource {
+
+    private final UserService userService;
+
+    public UserExportResource(UserService userService) {
+        this.userService = userService;
+    }
+
+    /**
+     * {@code GET /admin/users/export} : export the users matching the quick search, as a chunked response.
+     *
+     * @param query  the searched text, every user if absent
+     * @param format {@code csv} or {@code ndjson}, in any case
+     * @return status {@code 400 (Bad Request)} for an unknown format or a query that is not properly URL encoded,
+     * checked before the response is committed
+     */
+    @GetMapping("/users/export")
+    @PreAuthorize("hasAuthority(\"" + AuthoritiesConstants.ADMIN + "\")")
+    public ResponseEntity<StreamingResponseBody> exportUsers(@RequestParam(required = false) String query,
+                                                             @RequestParam(defaultValue = "csv") String format) {
+        ExportFormat exportFormat;
+        Specification<User> specification;
+        try {
+            exportFormat = ExportFormat.of(format);
+            specification = userService.getQuickSearchSpecification(query);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+        StreamingResponseBody body = out -> userService.exportManagedUsers(specification, exportFormat, out);
+        return ResponseEntity.ok()
+                             .contentType(MediaType.parseMediaType(exportFormat.getContentType() + ";charset=UTF-8"))
+                             .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=users." + exportFormat.getExtension())
+                             .body(body);
+    }
+}
@@ -7,19 +7,17 @@ import com.kripstanx.resource.vm.LoginVM;
 import com.kripstanx.security.SessionService;
 import com.kripstanx.security.jwt.JWTConfigurer;
 import com.kripstanx.security.jwt.JWTFilter;
-import com.kripstanx.service.AuditEventService;
+import com.kripstanx.service.LoginStateService;
 import com.kripstanx.service.UserService;
 import io.jsonwebtoken.Claims;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.List;
 import java.util.Optional;
 import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.boot.actuate.audit.AuditEvent;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -42,13 +40,13 @@ public class UserJWTController {
 
     private final Logger log = LoggerFactory.getLogger(UserJWTController.class);
 
-    private static final String EVENT_NAME_IN_CASE_OF_FAILED_LOGIN = "AUTHENTICATION_FAILURE";
+    private static final int MAX_FAILED_LOGIN_ATTEMPTS = 3;
 
     private final SessionService sessionService;
 
     private final AuthenticationManager authenticationManager;
 
-    private final AuditEventService auditEventService;
+    private final LoginStateService loginStateService;
 
     private final UserService userService;
 
@@ -58,12 +56,12 @@ public class UserJWTController {
     public UserJWTController(
         SessionService sessionService,
         AuthenticationManager authenticationManager,
-        AuditEventService auditEventService,
+        LoginStateService loginStateService,
         UserService userService
     ) {
         this.sessionService = sessionService;
         this.authenticationManager = authenticationManager;
-        this.auditEventService = auditEventService;
+        this.loginStateService = loginStateService;
         this.userService = userService;
     }
 
@@ -77,9 +75,10 @@ public class UserJWTController {
 
         authenticationToken.setDetails(new WebAuthenticationDetails(request));
 
+        Instant attemptedAt = Instant.now();
         try {
             final Authentication authentication = this.authenticationManager.authenticate(authenticationToken);
-            if (lockUserIfNeededDueToInactivity(loginVM.getUsername())) {
+            if (lockUserIfNeededDueToInactivity(loginVM.getUsername(), attemptedAt)) {
                 throw new DisabledException("User " + loginVM.getUsername() + " is disabled.");
             }
 
@@ -90,20 +89,19 @@ public class UserJWTController {
                 .header("message", internalAuthenticationServiceException.getMessage())
                 .build();
         } catch (AuthenticationException authException) {
-            lockUserIfExceedsThreeFailedAttempt(loginVM.getUsername());
+            lockUserIfExceedsThreeFailedAttempt(loginVM.getUsername(), attemptedAt);
             throw authException;
         }
     }
 
-    private boolean lockUserIfNeededDueToInactivity(String login) {
-        List<AuditEvent> lastSuccessfulLogins = auditEventService.getSuccesfulAuditEventsByUserOrderByAuditEventDateDesc(login);
-        if (lastSuccessfulLogins.size() < 2) {
+    private boolean lockUserIfNeededDueToInactivity(String login, Instant attemptedAt) {
+        Optional<Instant> previousLoginTime = loginStateService.loginSucceeded(login, attemptedAt);
+        if (!previousLoginTime.isPresent()) {
             return false;
         }
 
-        // the first entry is this current login, so we need the second one
-        Instant lastLoginTime = lastSuccessfulLogins.get(1).getTimestamp();
-        if (lastLoginTime.isBefore(Instant.now().minus(Duration.ofDays(loginInactivityPeriodInDays)))) {
+        Instant lastLoginTime = previousLoginTime.get();
+        if (lastLoginTime.isBefore(attemptedAt.minus(Duration.ofDays(loginInactivityPeriodInDays)))) {
             log.info("User '{}' was locked due to inactivity. Last login time: {}", login, lastLoginTime);
             userService.lockActiveUser(login);
             return true;
@@ -141,18 +139,13 @@ public class UserJWTController {
                 .build();
         } else {
             SecurityContextHolder.getContext().setAuthentication(authentication);
-            sessionService.invalidateSession(loginVM.getUsername());
-            String jwt = sessionService.createAndStoreSessionToken(authentication);
+            String jwt = sessionService.openSession(authentication);
             return ResponseEntity.ok().header(JWTConfigurer.AUTHORIZATION_HEADER, "Bearer " + jwt).body(new JWTToken(jwt));
         }
     }
 
-    private void lockUserIfExceedsThreeFailedAttempt(String login) {
-        List<AuditEvent> listOfLastThreeLoginAttempts = auditEventService.findTop3ByPrincipalOrderByAuditEventDateDesc(login);
-
-        boolean maxFailedLoginAttempts =
-            listOfLastThreeLoginAttempts.size() >= 3 &&
-            listOfLastThreeLoginAttempts.stream().allMatch(auditEvent -> EVENT_NAME_IN_CASE_OF_FAILED_LOGIN.equals(auditEvent.getType()));
+    private void lockUserIfExceedsThreeFailedAttempt(String login, Instant attemptedAt) {
+        boolean maxFailedLoginAttempts = loginStateService.loginFailed(login, attemptedAt) >= MAX_FAILED_LOGIN_ATTEMPTS;
 
         if (maxFailedLoginAttempts) {
             userService.lockActiveUser(login);
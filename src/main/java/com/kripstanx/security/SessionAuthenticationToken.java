@@ -0,0 +1,32 @@
+package com.kripstanx.security;
+
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.Collection;
+
+/**
+ * Authentication of a JWT session.
+ * <p>
+ * A new instance is created for every request, from the principal cached for the token, see
+ * {@link SessionService#createAuthentication}.
+ */
+public class SessionAuthenticationToken extends UsernamePasswordAuthenticationToken {
+
+    private static final long serialVersionUID = 1L;
+
+    private final boolean technical;
+
+    public SessionAuthenticationToken(Object principal, String token, Collection<? extends GrantedAuthority> authorities) {
+        super(principal, token, authorities);
+        this.technical = authorities.stream()
+                                    .anyMatch(authority -> AuthoritiesConstants.TECHNICAL.equals(authority.getAuthority()));
+    }
+
+    /**
+     * @return true if the user has the {@link AuthoritiesConstants#TECHNICAL} authority
+     */
+    public boolean isTechnical() {
+        return technical;
+    }
+}
@@ -0,0 +1,86 @@
+package com.kripstanx.security;
+
+import com.kripstanx.domain.SessionRevocation;
+import com.kripstanx.repository.SessionRevocationRepository;
+import com.kripstanx.service.util.TransactionUtil;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-memory list of the users whose sessions have been revoked (logged out, locked, deleted or renamed), used when
+ * multiple sessions are allowed and sessions are validated without looking up the user.
+ * <p>
+ * A token is revoked if it was issued before or in the same second as the last revocation of its user, as the
+ * {@code iat} claim only has a second precision: a login in the same second as the revocation has to be repeated.
+ * <p>
+ * The revocations made on this node are persisted as well, so they are restored on startup by {@link #rebuild}.
+ */
+@Component
+public class SessionRevocationList {
+
+    private final ConcurrentMap<String, Long> revokedAtEpochSecond = new ConcurrentHashMap<>();
+
+    private final SessionRevocationRepository sessionRevocationRepository;
+
+    public SessionRevocationList(SessionRevocationRepository sessionRevocationRepository) {
+        this.sessionRevocationRepository = sessionRevocationRepository;
+    }
+
+    /**
+     * Revoke every token issued to the user so far, persisted with the current transaction and applied once it has
+     * committed.
+     */
+    public void revoke(String username) {
+        if (username != null) {
+            sessionRevocationRepository.save(new SessionRevocation().username(username).revokedAt(Instant.now()));
+            TransactionUtil.runAfterCommit(() -> revoke(username, Instant.now()));
+        }
+    }
+
+    /**
+     * Revoke every token issued to the user before the given time, e.g. a revocation received from another node.
+     */
+    public void revoke(String username, Instant at) {
+        revokedAtEpochSecond.merge(username, at.getEpochSecond(), Math::max);
+    }
+
+    /**
+     * @param username the subject of the token
+     * @param issuedAt the {@code iat} claim of the token, tokens without it are considered revoked once their user is
+     * @return true if the token was issued before the last revocation of its user, or in the same second
+     */
+    public boolean isRevoked(String username, Date issuedAt) {
+        Long revokedAt = revokedAtEpochSecond.get(username);
+        if (revokedAt == null) {
+            return false;
+        }
+        return issuedAt == null || issuedAt.getTime() / 1000 <= revokedAt;
+    }
+
+    /**
+     * Replace the list with the persisted revocations, and the given users revoked at the given time.
+     */
+    public void rebuild(Collection<String> usernames, Instant at) {
+        revokedAtEpochSecond.clear();
+        usernames.forEach(username -> revoke(username, at));
+        sessionRevocationRepository.findAll().forEach(revocation -> revoke(revocation.getUsername(), revocation.getRevokedAt()));
+    }
+
+    /**
+     * Forget the revocations older than the given time, the tokens they apply to have expired since.
+     */
+    public void removeRevokedBefore(Instant instant) {
+        long epochSecond = instant.getEpochSecond();
+        revokedAtEpochSecond.values().removeIf(revokedAt -> revokedAt < epochSecond);
+        sessionRevocationRepository.deleteRevokedBefore(instant);
+    }
+
+    public int size() {
+        return revokedAtEpochSecond.size();
+    }
+}
@@ -1,16 +1,24 @@
 package com.kripstanx.security;
 
+import com.kripstanx.config.ApplicationProperties;
 import com.kripstanx.domain.Authority;
+import com.kripstanx.repository.AuthorityRepository;
 import com.kripstanx.repository.UserRepository;
+import com.kripstanx.security.SessionTokenRegistry.SessionTokens;
+import com.kripstanx.security.jwt.ExpiringTokenCache;
+import com.kripstanx.security.jwt.TokenDigest;
 import com.kripstanx.security.jwt.TokenProvider;
+import com.kripstanx.service.cluster.ClusterInvalidationService;
 import tech.jhipster.config.JHipsterProperties;
+import com.kripstanx.service.util.TransactionUtil;
 import io.jsonwebtoken.Claims;
-import org.apache.commons.lang3.tuple.Pair;
+import org.hibernate.Session;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
@@ -18,8 +26,17 @@ import org.springframework.security.core.userdetails.User;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PreDestroy;
+import javax.persistence.Cache;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
 
 @Service
@@ -27,26 +44,127 @@ public class SessionService {
 
     private final Logger log = LoggerFactory.getLogger(SessionService.class);
 
+    private static final long PREVIOUS_TOKEN_GRACE_PERIOD_IN_SECONDS = 60;
+
+    /**
+     * A token issued by another node may be committed this long after its {@code iat}.
+     */
+    private static final Duration TOKEN_COMMIT_MARGIN = Duration.ofSeconds(5);
+
+    /**
+     * Each distinct set of authorities of the issued tokens is interned, up to this number of sets.
+     */
+    private static final int MAX_AUTHORITY_LISTS = 256;
+
     private final TokenProvider tokenProvider;
 
     private final UserRepository userRepository;
 
+    private final SessionTokenRegistry sessionTokenRegistry;
+
+    private final SessionRevocationList sessionRevocationList;
+
+    private final AuthorityRepository authorityRepository;
+
+    private final ClusterInvalidationService clusterInvalidationService;
+
     private final long tokenValidityInMilliseconds;
 
+    /**
+     * Interned authorities by name, the set of authorities is tiny and does not change at runtime.
+     */
+    private final ConcurrentMap<String, GrantedAuthority> authorities = new ConcurrentHashMap<>();
+
+    /**
+     * Interned authority lists by the value of the {@link TokenProvider#AUTHORITIES_KEY} claim, bounded by
+     * {@link #MAX_AUTHORITY_LISTS}.
+     */
+    private final ConcurrentMap<String, List<GrantedAuthority>> authorityLists = new ConcurrentHashMap<>();
+
+    private final ExpiringTokenCache<User> principalCache;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
     @Value("${application.allow-multiple-sessions:false}")
     private boolean allowMultipleSessions;
 
     public SessionService(JHipsterProperties jHipsterProperties,
                           TokenProvider tokenProvider,
-                          UserRepository userRepository) {
+                          UserRepository userRepository,
+                          SessionTokenRegistry sessionTokenRegistry,
+                          SessionRevocationList sessionRevocationList,
+                          AuthorityRepository authorityRepository,
+                          ApplicationProperties applicationProperties,
+                          ClusterInvalidationService clusterInvalidationService) {
         this.tokenProvider = tokenProvider;
         this.userRepository = userRepository;
+        this.sessionTokenRegistry = sessionTokenRegistry;
+        this.sessionRevocationList = sessionRevocationList;
+        this.authorityRepository = authorityRepository;
+        this.clusterInvalidationService = clusterInvalidationService;
         this.tokenValidityInMilliseconds =
             1000 * jHipsterProperties
                 .getSecurity()
                 .getAuthentication()
                 .getJwt()
                 .getTokenValidityInSeconds();
+        ApplicationProperties.TokenCache authenticationCacheProperties =
+            applicationProperties.getJwt().getAuthenticationCache();
+        this.principalCache = authenticationCacheProperties.isEnabled()
+            ? new ExpiringTokenCache<>(authenticationCacheProperties.getMaxEntries())
+            : null;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void internAuthorities() {
+        try {
+            authorityRepository.findAll().forEach(authority -> internAuthority(authority.getName()));
+            log.debug("Interned {} authorities", authorities.size());
+        } catch (Exception e) {
+            // not fatal, the authorities are interned on first use as well
+            log.warn("Could not load the authorities: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * In stateless session mode the revocation list is rebuilt from the persisted revocations, which cover the deleted
+     * and renamed users, and from the users who are logged out or locked: their tokens issued before the startup are
+     * revoked.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildRevocationList() {
+        if (allowMultipleSessions) {
+            List<String> usernames = userRepository.findAllUsernamesWithoutActiveSession();
+            sessionRevocationList.rebuild(usernames, Instant.now());
+            log.info("Stateless session mode, {} revoked users", usernames.size());
+        }
+    }
+
+    @Transactional
+    @Scheduled(cron = "0 0 * * * *") // every hour
+    public void removeExpiredRevocations() {
+        sessionRevocationList.removeRevokedBefore(Instant.now().minusMillis(tokenValidityInMilliseconds));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (principalCache != null) {
+            principalCache.close();
+        }
+    }
+
+    /**
+     * Start a new session after a successful login. Unless multiple sessions are allowed, the previous session of the
+     * user is invalidated first.
+     *
+     * @return JWT token for the session
+     */
+    public String openSession(Authentication authentication) {
+        if (!allowMultipleSessions) {
+            invalidateSession(authentication.getName());
+        }
+        return createAndStoreSessionToken(authentication);
     }
 
     /**
@@ -58,45 +176,118 @@ public class SessionService {
         return token;
     }
 
+    /**
+     * Housekeeping only: expired previous tokens are already rejected by {@link SessionTokens#matches}.
+     * <p>
+     * The tokens are cleared with plain JDBC and the cleared users are evicted one by one, as a bulk update would make
+     * Hibernate evict the whole second-level cache region of the users.
+     */
     @Transactional
     @Scheduled(cron = "0 * * * * *") // every minute
     public void removeExpiredTemporaryJwtTokens() {
-        userRepository.clearTemporalJwtTokens(Instant.now());
+        Instant now = Instant.now();
+        List<Long> ids = userRepository.findAllIdsWithExpiredTemporalJwtToken(now);
+        if (ids.isEmpty()) {
+            return;
+        }
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(
+                "update user set jwt_token2 = null, jwt_token2_expires_at = null " +
+                "where id = ? and jwt_token2_expires_at <= ?")) {
+                for (Long id : ids) {
+                    statement.setLong(1, id);
+                    statement.setTimestamp(2, Timestamp.from(now));
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        });
+        Cache cache = entityManager.getEntityManagerFactory().getCache();
+        TransactionUtil.runAfterCommit(() -> ids.forEach(id -> cache.evict(com.kripstanx.domain.User.class, id)));
     }
 
+    /**
+     * When multiple sessions are allowed (stateless session mode) the session is valid if the JWT is valid and has not
+     * been revoked, without any database access. Otherwise the token must be the current or the previous token of the
+     * user.
+     */
     public Optional<Claims> isSessionValid(String authToken) {
         Optional<Claims> maybeClaims = tokenProvider.validateTokenAndGetClaims(authToken);
         if (!maybeClaims.isPresent()) {
             return Optional.empty();
         }
         String username = maybeClaims.get().getSubject();
-        Pair<String, String> expectedTokens = findUserToken(username);
-        if (
-            allowMultipleSessions || Objects.equals(expectedTokens.getLeft(), authToken) ||
-                Objects.equals(expectedTokens.getRight(), authToken)
-        ) {
+        if (allowMultipleSessions) {
+            return sessionRevocationList.isRevoked(username, maybeClaims.get().getIssuedAt())
+                ? Optional.empty()
+                : maybeClaims;
+        }
+        String tokenDigest = TokenDigest.of(authToken);
+        Instant now = Instant.now();
+        SessionTokens tokens = sessionTokenRegistry.get(username);
+        if (tokens == null) {
+            tokens = loadUserTokens(username, null);
+        }
+        if (tokens.matches(tokenDigest, now)) {
             return maybeClaims;
-        } else {
-            return Optional.empty();
         }
+        // the token may have been rotated by another node, the database is the source of truth, but a stale token
+        // issued before the registered tokens were read is rejected without reading them again
+        if (tokens.mayNotKnow(maybeClaims.get().getIssuedAt(), TOKEN_COMMIT_MARGIN) &&
+            loadUserTokens(username, tokens).matches(tokenDigest, now)) {
+            return maybeClaims;
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * The principal of a token is created once and then served from a cache until the token expires. The
+     * authentication itself is created for every request, it is mutable and ends up in the security context.
+     */
+    public SessionAuthenticationToken createAuthentication(String token, Claims claims) {
+        String tokenDigest = principalCache != null ? TokenDigest.of(token) : null;
+        User principal = principalCache != null ? principalCache.get(tokenDigest) : null;
+        if (principal == null) {
+            principal = new User(claims.getSubject(), "", authorities(claims));
+            if (principalCache != null) {
+                principalCache.put(tokenDigest, principal, claims.getExpiration());
+            }
+        }
+        return new SessionAuthenticationToken(principal, token, principal.getAuthorities());
     }
 
-    public Authentication createAuthentication(String token, Claims claims) {
-        Collection<? extends GrantedAuthority> authorities =
-            Arrays.stream(claims.get(TokenProvider.AUTHORITIES_KEY).toString().split(","))
-                  .map(SimpleGrantedAuthority::new)
-                  .collect(Collectors.toList());
+    private List<GrantedAuthority> authorities(Claims claims) {
+        String authoritiesClaim = String.valueOf(claims.get(TokenProvider.AUTHORITIES_KEY));
+        List<GrantedAuthority> grantedAuthorities = authorityLists.get(authoritiesClaim);
+        if (grantedAuthorities == null) {
+            grantedAuthorities = toAuthorities(authoritiesClaim);
+            if (authorityLists.size() < MAX_AUTHORITY_LISTS) {
+                authorityLists.putIfAbsent(authoritiesClaim, grantedAuthorities);
+            }
+        }
+        return grantedAuthorities;
+    }
 
-        User principal = new User(claims.getSubject(), "", authorities);
+    private List<GrantedAuthority> toAuthorities(String authoritiesClaim) {
+        return Collections.unmodifiableList(Arrays.stream(authoritiesClaim.split(","))
+                                                  .map(this::internAuthority)
+                                                  .collect(Collectors.toList()));
+    }
 
-        return new UsernamePasswordAuthenticationToken(principal, token, authorities);
+    private GrantedAuthority internAuthority(String name) {
+        return authorities.computeIfAbsent(name, SimpleGrantedAuthority::new);
     }
 
     public void invalidateSession(String username) {
-        storeUserToken(username, null);
+        com.kripstanx.domain.User user = storeUserToken(username, null);
+        if (allowMultipleSessions) {
+            // otherwise the registered token is checked, and it has just been cleared
+            sessionRevocationList.revoke(username);
+        }
+        clusterInvalidationService.sessionRevoked(user.getId(), username);
     }
 
-    private void storeUserToken(String username, String token) {
+    private com.kripstanx.domain.User storeUserToken(String username, String token) {
         Optional<com.kripstanx.domain.User> optionalUser = userRepository.findOneByUsername(username);
         if (optionalUser.isPresent()) {
             com.kripstanx.domain.User user = optionalUser.get();
@@ -105,20 +296,24 @@ public class SessionService {
                 user.setJwtToken2ExpiresAt(null);
             } else {
                 user.setJwtToken2(user.getJwtToken());
-                user.setJwtToken2ExpiresAt(Instant.now().plusSeconds(60));
+                user.setJwtToken2ExpiresAt(Instant.now().plusSeconds(PREVIOUS_TOKEN_GRACE_PERIOD_IN_SECONDS));
             }
             user.setJwtToken(token);
             userRepository.save(user);
+            sessionTokenRegistry.put(username, SessionTokens.of(user));
+            if (token != null) {
+                clusterInvalidationService.sessionChanged(user.getId(), username);
+            }
+            return user;
         } else {
             throw new NoSuchElementException(username);
         }
     }
 
-    private Pair<String, String> findUserToken(String username) {
+    private SessionTokens loadUserTokens(String username, SessionTokens expected) {
         Optional<com.kripstanx.domain.User> optionalUser = userRepository.findOneByUsername(username);
         if (optionalUser.isPresent()) {
-            com.kripstanx.domain.User user = optionalUser.get();
-            return Pair.of(user.getJwtToken(), user.getJwtToken2());
+            return sessionTokenRegistry.refresh(username, expected, SessionTokens.of(optionalUser.get()));
         } else {
             throw new NoSuchElementException(username);
         }
@@ -0,0 +1,160 @@
+package com.kripstanx.security;
+
+import com.kripstanx.security.jwt.TokenDigest;
+import com.kripstanx.service.util.TransactionUtil;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-memory registry of the session tokens of the users, so a session can be validated without loading the user
+ * from the database.
+ * <p>
+ * Only digests of the tokens are kept. The database stays the source of truth: entries are written through after the
+ * user has been saved, and can be refreshed from the database at any time.
+ */
+@Component
+public class SessionTokenRegistry {
+
+    private final ConcurrentMap<String, SessionTokens> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * @return the registered tokens of the user, or null if the user is not known by this registry
+     */
+    public SessionTokens get(String username) {
+        return sessions.get(username);
+    }
+
+    /**
+     * Register the tokens of the user once the current transaction has committed.
+     */
+    public void put(String username, SessionTokens tokens) {
+        TransactionUtil.runAfterCommit(() -> sessions.put(username, tokens));
+    }
+
+    /**
+     * Replace the tokens of the user with the ones loaded from the database, unless they have been changed since
+     * {@code expected} was read.
+     *
+     * @return the tokens registered for the user after the refresh
+     */
+    public SessionTokens refresh(String username, SessionTokens expected, SessionTokens loaded) {
+        if (expected == null) {
+            SessionTokens previous = sessions.putIfAbsent(username, loaded);
+            return previous == null ? loaded : previous;
+        }
+        if (sessions.replace(username, expected, loaded)) {
+            return loaded;
+        }
+        SessionTokens current = sessions.get(username);
+        return current == null ? loaded : current;
+    }
+
+    /**
+     * Forget the tokens of the user once the current transaction has committed, so they are reloaded from the
+     * database on the next request.
+     */
+    public void evict(String username) {
+        if (username != null) {
+            TransactionUtil.runAfterCommit(() -> sessions.remove(username));
+        }
+    }
+
+    public void evictAll() {
+        sessions.clear();
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Immutable snapshot of the current and the previous (grace period) token of a user.
+     */
+    public static final class SessionTokens {
+
+        private final String currentTokenDigest;
+
+        private final String previousTokenDigest;
+
+        private final Instant previousTokenExpiresAt;
+
+        /**
+         * When the tokens were read, not part of the equality.
+         */
+        private final Instant readAt;
+
+        private SessionTokens(String currentTokenDigest, String previousTokenDigest, Instant previousTokenExpiresAt) {
+            this.currentTokenDigest = currentTokenDigest;
+            this.previousTokenDigest = previousTokenDigest;
+            this.previousTokenExpiresAt = previousTokenExpiresAt;
+            this.readAt = Instant.now();
+        }
+
+        public static SessionTokens of(String currentToken, String previousToken, Instant previousTokenExpiresAt) {
+            return new SessionTokens(TokenDigest.of(currentToken),
+                                     TokenDigest.of(previousToken),
+                                     previousTokenExpiresAt);
+        }
+
+        public static SessionTokens of(com.kripstanx.domain.User user) {
+            return of(user.getJwtToken(), user.getJwtToken2(), user.getJwtToken2ExpiresAt());
+        }
+
+        /**
+         * The previous token is only accepted until its grace period is over, regardless of whether the scheduled
+         * cleanup has already removed it from the database.
+         *
+         * @param tokenDigest the digest of the token to check
+         * @param now         the current time
+         * @return true if the token is the current token, or the previous one within its grace period
+         */
+        public boolean matches(String tokenDigest, Instant now) {
+            if (tokenDigest == null) {
+                return false;
+            }
+            if (tokenDigest.equals(currentTokenDigest)) {
+                return true;
+            }
+            return tokenDigest.equals(previousTokenDigest) &&
+                previousTokenExpiresAt != null &&
+                now.isBefore(previousTokenExpiresAt);
+        }
+
+        /**
+         * A token issued well before these tokens were read is known by them: when it does not match, reading the
+         * tokens again cannot change the outcome until they are replaced in the registry.
+         *
+         * @param issuedAt the {@code iat} claim of the token
+         * @param margin   the time a token issued by another node may take to be committed
+         * @return true if the token may have been issued after these tokens were read
+         */
+        public boolean mayNotKnow(Date issuedAt, Duration margin) {
+            return issuedAt == null || !issuedAt.toInstant().isBefore(readAt.minus(margin));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            SessionTokens that = (SessionTokens) o;
+            return Objects.equals(currentTokenDigest, that.currentTokenDigest) &&
+                Objects.equals(previousTokenDigest, that.previousTokenDigest) &&
+                Objects.equals(previousTokenExpiresAt, that.previousTokenExpiresAt);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(currentTokenDigest, previousTokenDigest, previousTokenExpiresAt);
+        }
+    }
+}
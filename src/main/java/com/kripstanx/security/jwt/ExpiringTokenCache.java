@@ -0,0 +1,107 @@
+package com.kripstanx.security.jwt;
+
+import org.ehcache.UserManagedCache;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.config.builders.UserManagedCacheBuilder;
+import org.ehcache.expiry.ExpiryPolicy;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.function.Supplier;
+
+/**
+ * Bounded on-heap cache of values derived from a JWT, keyed by the {@link TokenDigest} of the token.
+ * <p>
+ * Every entry expires together with the token it was derived from, so a cached value never outlives the {@code exp}
+ * claim of its token.
+ *
+ * @param <V> the type of the cached values
+ */
+public class ExpiringTokenCache<V> implements AutoCloseable {
+
+    private final UserManagedCache<String, ExpiringValue> cache;
+
+    public ExpiringTokenCache(long maxEntries) {
+        this.cache = UserManagedCacheBuilder.newUserManagedCacheBuilder(String.class, ExpiringValue.class)
+                                            .withResourcePools(ResourcePoolsBuilder.heap(maxEntries))
+                                            .withExpiry(new TokenExpiryPolicy())
+                                            .build(true);
+    }
+
+    /**
+     * @return the cached value, or null if there is none or the token has expired in the meantime
+     */
+    @SuppressWarnings("unchecked")
+    public V get(String tokenDigest) {
+        if (tokenDigest == null) {
+            return null;
+        }
+        ExpiringValue entry = cache.get(tokenDigest);
+        if (entry == null || !Instant.now().isBefore(entry.expiresAt)) {
+            return null;
+        }
+        return (V) entry.value;
+    }
+
+    /**
+     * Cache a value until the given expiration of its token. Values of tokens without expiration are not cached.
+     */
+    public void put(String tokenDigest, V value, Date tokenExpiration) {
+        if (tokenDigest == null || value == null || tokenExpiration == null) {
+            return;
+        }
+        cache.put(tokenDigest, new ExpiringValue(value, tokenExpiration.toInstant()));
+    }
+
+    public void remove(String tokenDigest) {
+        if (tokenDigest != null) {
+            cache.remove(tokenDigest);
+        }
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    @Override
+    public void close() {
+        cache.close();
+    }
+
+    private static final class ExpiringValue {
+
+        private final Object value;
+
+        private final Instant expiresAt;
+
+        private ExpiringValue(Object value, Instant expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class TokenExpiryPolicy implements ExpiryPolicy<String, ExpiringValue> {
+
+        @Override
+        public Duration getExpiryForCreation(String key, ExpiringValue value) {
+            return timeToLive(value);
+        }
+
+        @Override
+        public Duration getExpiryForAccess(String key, Supplier<? extends ExpiringValue> value) {
+            // keep the expiration set at creation
+            return null;
+        }
+
+        @Override
+        public Duration getExpiryForUpdate(String key, Supplier<? extends ExpiringValue> oldValue, ExpiringValue newValue) {
+            return timeToLive(newValue);
+        }
+
+        private Duration timeToLive(ExpiringValue value) {
+            Duration timeToLive = Duration.between(Instant.now(), value.expiresAt);
+            return timeToLive.isNegative() ? Duration.ZERO : timeToLive;
+        }
+    }
+}
@@ -1,9 +1,8 @@
 package com.kripstanx.security.jwt;
 
-import com.kripstanx.security.AuthoritiesConstants;
+import com.kripstanx.security.SessionAuthenticationToken;
 import com.kripstanx.security.SessionService;
 import io.jsonwebtoken.Claims;
-import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.util.StringUtils;
 import org.springframework.web.filter.GenericFilterBean;
@@ -36,14 +35,14 @@ public class JWTFilter extends GenericFilterBean {
         String jwtToken = resolveToken(httpServletRequest);
         Optional<Claims> maybeJwtClaims = this.sessionService.isSessionValid(jwtToken);
         if (StringUtils.hasText(jwtToken) && maybeJwtClaims.isPresent()) {
-            Authentication authentication = sessionService.createAuthentication(jwtToken, maybeJwtClaims.get());
+            SessionAuthenticationToken authentication = sessionService.createAuthentication(jwtToken, maybeJwtClaims.get());
             // in offline mode only technical users are allowed to send non-GET requests, except the POST(renew-token)
             boolean prohibited =
                 (
                     !"GET".equalsIgnoreCase(((HttpServletRequest) servletRequest).getMethod()) &&
                         !httpServletRequest.getRequestURI().contains("renew-token")
                 )
-                    && isUserNotTechnical(authentication);
+                    && !authentication.isTechnical();
             if (prohibited) {
                 ((HttpServletResponse) servletResponse).sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED,
                                                                   "KripStanx is in offline mode");
@@ -54,13 +53,6 @@ public class JWTFilter extends GenericFilterBean {
         filterChain.doFilter(servletRequest, servletResponse);
     }
 
-    private boolean isUserNotTechnical(Authentication authentication) {
-        return authentication.getAuthorities()
-                             .stream()
-                             .noneMatch(o -> o.getAuthority().equals(
-                                 AuthoritiesConstants.TECHNICAL));
-    }
-
     public static String resolveToken(HttpServletRequest request) {
         String bearerToken = request.getHeader(JWTConfigurer.AUTHORIZATION_HEADER);
         if (StringUtils.hasText(bearerToken) && bearerToken.startsWith("Bearer ")) {
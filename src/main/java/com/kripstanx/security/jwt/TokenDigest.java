@@ -0,0 +1,42 @@
+package com.kripstanx.security.jwt;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * Utility class for computing a fixed length digest of a JWT, so tokens can be compared and used as keys without
+ * keeping the raw value around.
+ */
+public final class TokenDigest {
+
+    private static final String ALGORITHM = "SHA-256";
+
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        }
+    });
+
+    private TokenDigest() {
+    }
+
+    /**
+     * Digest a token.
+     *
+     * @param token the raw JWT
+     * @return the URL-safe Base64 encoded SHA-256 digest of the token, or null if the token is null
+     */
+    public static String of(String token) {
+        if (token == null) {
+            return null;
+        }
+        MessageDigest messageDigest = DIGEST.get();
+        messageDigest.reset();
+        byte[] digest = messageDigest.digest(token.getBytes(StandardCharsets.US_ASCII));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+    }
+}
@@ -1,5 +1,6 @@
 package com.kripstanx.security.jwt;
 
+import com.kripstanx.config.ApplicationProperties;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
 import org.springframework.util.ObjectUtils;
@@ -11,6 +12,7 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
 import java.nio.charset.StandardCharsets;
 import java.security.Key;
 import java.util.Base64;
@@ -29,7 +31,11 @@ public class TokenProvider {
 
     private final Key secretKey;
 
-    public TokenProvider(JHipsterProperties jHipsterProperties) {
+    private final JwtParser jwtParser;
+
+    private final ExpiringTokenCache<Claims> claimsCache;
+
+    public TokenProvider(JHipsterProperties jHipsterProperties, ApplicationProperties applicationProperties) {
 
         secretKey = Keys.hmacShaKeyFor(jHipsterProperties
                 .getSecurity()
@@ -46,6 +52,21 @@ public class TokenProvider {
                 .getSecret()
                 .getBytes(StandardCharsets.UTF_8)
         ); */
+
+        // the parser is immutable and thread-safe once built
+        jwtParser = Jwts.parserBuilder().setSigningKey(secretKey).build();
+
+        ApplicationProperties.TokenCache claimsCacheProperties = applicationProperties.getJwt().getClaimsCache();
+        claimsCache = claimsCacheProperties.isEnabled()
+            ? new ExpiringTokenCache<>(claimsCacheProperties.getMaxEntries())
+            : null;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (claimsCache != null) {
+            claimsCache.close();
+        }
     }
 
     public String createToken(Authentication authentication, long tokenValidityInMilliseconds) {
@@ -61,24 +82,30 @@ public class TokenProvider {
                            .claim(AUTHORITIES_KEY, authorities)
                            .claim(SALT_KEY, UUID.randomUUID().toString())
                            .signWith(secretKey, SignatureAlgorithm.HS512)
+                           .setIssuedAt(new Date(now))
                            .setExpiration(validity)
                            .compact();
         return token;
     }
 
+    /**
+     * Verified claims are cached by token digest until the token expires, so repeated calls with the same token skip
+     * the signature verification and the parsing of the token.
+     */
     public Optional<Claims> validateTokenAndGetClaims(String authToken) {
+        String tokenDigest = claimsCache != null ? TokenDigest.of(authToken) : null;
+        if (tokenDigest != null) {
+            Claims cachedClaims = claimsCache.get(tokenDigest);
+            if (cachedClaims != null) {
+                return Optional.of(cachedClaims);
+            }
+        }
         try {
-              Jws<Claims> claimsJws = Jwts
-                      .parserBuilder()
-                      .setSigningKey(secretKey)
-                      .build()
-                      .parseClaimsJws(authToken);
-
-            /* Jws<Claims> claimsJws = Jwts
-                .parser()
-                .setSigningKey(secretKey)
-                .parseClaimsJws(authToken); */
-            return Optional.of(claimsJws.getBody());
+            Claims claims = jwtParser.parseClaimsJws(authToken).getBody();
+            if (tokenDigest != null) {
+                claimsCache.put(tokenDigest, claims, claims.getExpiration());
+            }
+            return Optional.of(claims);
         } catch (JwtException | IllegalArgumentException e) {
             log.info("Invalid JWT token.");
             log.trace("Invalid JWT token trace.", e);
@@ -46,6 +46,26 @@ public class ArchiveAndPurgeLogService {
         return archiveAndPurgeLog;
     }
 
+    /**
+     * Save a ArchiveAndPurgeLog of an archiving task.
+     *
+     * @return the persisted entity
+     */
+    public ArchiveAndPurgeLog saveArchive(String taskName,
+                                          Long processedRowCount,
+                                          Long archivedRowCount,
+                                          Long bytesWritten,
+                                          Double compressionRatio) {
+        ArchiveAndPurgeLog archiveAndPurgeLog = new ArchiveAndPurgeLog().taskName(taskName)
+                                                                        .processedRowCount(processedRowCount)
+                                                                        .archivedRowCount(archivedRowCount)
+                                                                        .bytesWritten(bytesWritten)
+                                                                        .compressionRatio(compressionRatio)
+                                                                        .operationTime(Instant.now());
+        log.debug("Request to save ArchiveAndPurgeLog : {}", archiveAndPurgeLog);
+        return archiveAndPurgeLogRepository.save(archiveAndPurgeLog);
+    }
+
     public void purge(int olderThanInDays) {
         log.info("Purge olderThanInDays {}", olderThanInDays);
 
@@ -0,0 +1,331 @@
+package com.kripstanx.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kripstanx.config.ApplicationProperties;
+import com.kripstanx.domain.AuditEventDataConverter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.sql.DataSource;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Archives old audit events to files before deleting them.
+ * <p>
+ * The events of a day are read in chunks of consecutive ids, each chunk is written as one JSON line per event to its
+ * own gzipped segment file, named after the day and the id range, so the segments of a day sort by id and can be read
+ * as a single gzip stream. A segment is written to a temporary file, forced to disk and renamed, so it is either
+ * complete or absent; its rows are deleted right after. A retry resumes after the last archived id of the day, and
+ * deletes first the archived rows that a failed run kept.
+ */
+@Service
+public class AuditEventArchiver {
+
+    static final String ARCHIVE_TASK_NAME = "Archive_AuditEvent";
+
+    private static final String SELECT_EVENTS_SQL =
+        "select event_id, principal, event_date, event_type, event_data from persistent_audit_event " +
+        "where event_date >= ? and event_date < ? and event_id > ? order by event_id";
+
+    private static final String SEGMENT_PREFIX = "audit-events-";
+
+    private static final String SEGMENT_SUFFIX = ".ndjson.gz";
+
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private static final byte NEW_LINE = '\n';
+
+    private final Logger log = LoggerFactory.getLogger(AuditEventArchiver.class);
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final DataSource dataSource;
+
+    private final ObjectMapper objectMapper;
+
+    private final AuditEventPurger auditEventPurger;
+
+    private final ArchiveAndPurgeLogService archiveAndPurgeLogService;
+
+    private final ApplicationProperties.Archive properties;
+
+    public AuditEventArchiver(DataSource dataSource,
+                              ObjectMapper objectMapper,
+                              AuditEventPurger auditEventPurger,
+                              ArchiveAndPurgeLogService archiveAndPurgeLogService,
+                              ApplicationProperties applicationProperties) {
+        this.dataSource = dataSource;
+        this.objectMapper = objectMapper;
+        this.auditEventPurger = auditEventPurger;
+        this.archiveAndPurgeLogService = archiveAndPurgeLogService;
+        this.properties = applicationProperties.getAudit().getArchive();
+    }
+
+    /**
+     * Archive and delete the audit events older than the given time, one day at a time.
+     *
+     * @return the number of archived events
+     */
+    public long archive(Instant before) {
+        return archiveDays(before, true).stream().mapToLong(archived -> Math.max(archived, 0)).sum();
+    }
+
+    /**
+     * Archive the audit events older than the given time without deleting them, they are about to be deleted by
+     * dropping their partitions.
+     *
+     * @return true if every day has been archived
+     */
+    public boolean archiveOnly(Instant before) {
+        return archiveDays(before, false).stream().allMatch(archived -> archived >= 0);
+    }
+
+    /**
+     * @return the number of archived events by day, -1 for the days which could not be archived
+     */
+    private List<Long> archiveDays(Instant before, boolean purge) {
+        Instant oldest = entityManager
+            .createQuery("select min(e.auditEventDate) from PersistentAuditEvent e where e.auditEventDate < :before",
+                         Instant.class)
+            .setParameter("before", before)
+            .getSingleResult();
+        List<Long> archived = new ArrayList<>();
+        if (oldest == null) {
+            return archived;
+        }
+        for (LocalDate day = oldest.atZone(ZoneOffset.UTC).toLocalDate();
+             day.atStartOfDay(ZoneOffset.UTC).toInstant().isBefore(before);
+             day = day.plusDays(1)) {
+            Instant from = day.atStartOfDay(ZoneOffset.UTC).toInstant();
+            Instant to = day.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+            archived.add(archiveDay(day, from, to.isBefore(before) ? to : before, purge));
+        }
+        return archived;
+    }
+
+    private long archiveDay(LocalDate day, Instant from, Instant to, boolean purge) {
+        Path directory = Paths.get(properties.getDirectory());
+        Day archived = new Day();
+        try {
+            long lastId = lastArchivedId(directory, day);
+            if (purge && lastId > 0) {
+                archived.deleted += auditEventPurger.purge(from, to, 0, lastId);
+            }
+            Segment segment;
+            do {
+                segment = writeSegment(directory, day, from, to, lastId);
+                if (segment.events == 0) {
+                    break;
+                }
+                archived.add(segment);
+                lastId = segment.lastId;
+                if (purge) {
+                    archived.deleted += auditEventPurger.purge(from, to, segment.firstId, segment.lastId);
+                }
+            } while (segment.events == properties.getChunkSize());
+        } catch (IOException | SQLException | RuntimeException e) {
+            log.error("Could not archive the audit events of {} to {}, the remaining ones are kept", day, directory, e);
+            log(day, archived);
+            return -1;
+        }
+        log(day, archived);
+        return archived.events;
+    }
+
+    private void log(LocalDate day, Day archived) {
+        if (archived.events == 0 && archived.deleted == 0) {
+            return;
+        }
+        double compressionRatio = archived.compressedBytes > 0 ? (double) archived.uncompressedBytes / archived.compressedBytes : 0;
+        archiveAndPurgeLogService.saveArchive(ARCHIVE_TASK_NAME,
+                                              archived.deleted,
+                                              archived.events,
+                                              archived.compressedBytes,
+                                              compressionRatio);
+        log.info("Archived {} audit events of {} in {} segments: {} bytes, compression ratio {}",
+                 archived.events, day, archived.segments, archived.compressedBytes, String.format("%.1f", compressionRatio));
+    }
+
+    /**
+     * @return the last id of the segments of the day, 0 if there are none
+     */
+    private long lastArchivedId(Path directory, LocalDate day) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+        String prefix = SEGMENT_PREFIX + day + ".";
+        long lastId = 0;
+        try (DirectoryStream<Path> segments = Files.newDirectoryStream(directory, prefix + "*" + SEGMENT_SUFFIX)) {
+            for (Path segment : segments) {
+                String name = segment.getFileName().toString();
+                String ids = name.substring(prefix.length(), name.length() - SEGMENT_SUFFIX.length());
+                int separator = ids.indexOf('-');
+                if (separator > 0) {
+                    lastId = Math.max(lastId, Long.parseLong(ids.substring(separator + 1)));
+                }
+            }
+        }
+        return lastId;
+    }
+
+    /**
+     * Write the next chunk of events of the time range, after the given id, to its own segment.
+     */
+    private Segment writeSegment(Path directory, LocalDate day, Instant from, Instant to, long afterId)
+        throws IOException, SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setReadOnly(true);
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(SELECT_EVENTS_SQL,
+                                                                           ResultSet.TYPE_FORWARD_ONLY,
+                                                                           ResultSet.CONCUR_READ_ONLY)) {
+                statement.setFetchSize(properties.getFetchSize());
+                statement.setMaxRows(properties.getChunkSize());
+                statement.setTimestamp(1, Timestamp.from(from));
+                statement.setTimestamp(2, Timestamp.from(to));
+                statement.setLong(3, afterId);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    if (!resultSet.next()) {
+                        return new Segment();
+                    }
+                    Files.createDirectories(directory.toAbsolutePath());
+                    Path temporary = directory.resolve(SEGMENT_PREFIX + day + TEMPORARY_SUFFIX);
+                    try {
+                        Segment segment = write(temporary, resultSet);
+                        Path target = directory.resolve(String.format("%s%s.%019d-%019d%s", SEGMENT_PREFIX, day,
+                                                                      segment.firstId, segment.lastId, SEGMENT_SUFFIX));
+                        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                        return segment;
+                    } finally {
+                        Files.deleteIfExists(temporary);
+                    }
+                }
+            } finally {
+                connection.rollback();
+            }
+        }
+    }
+
+    /**
+     * Write the rows, starting with the current one, to the file and force it to disk.
+     */
+    private Segment write(Path file, ResultSet resultSet) throws IOException, SQLException {
+        Segment segment = new Segment();
+        try (FileChannel channel = FileChannel.open(file,
+                                                    StandardOpenOption.CREATE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING,
+                                                    StandardOpenOption.WRITE)) {
+            try (GZIPOutputStream gzip = new GZIPOutputStream(new KeepOpenOutputStream(Channels.newOutputStream(channel)), 65536)) {
+                do {
+                    long id = resultSet.getLong(1);
+                    if (segment.events == 0) {
+                        segment.firstId = id;
+                    }
+                    segment.lastId = id;
+                    segment.events++;
+                    Map<String, Object> event = new LinkedHashMap<>();
+                    event.put("id", id);
+                    event.put("principal", resultSet.getString(2));
+                    Timestamp eventDate = resultSet.getTimestamp(3);
+                    event.put("date", eventDate != null ? eventDate.toInstant().toString() : null);
+                    event.put("type", resultSet.getString(4));
+                    event.put("data", AuditEventDataConverter.decode(resultSet.getBytes(5)));
+                    segment.uncompressedBytes += writeLine(gzip, event);
+                } while (resultSet.next());
+            }
+            channel.force(true);
+            segment.compressedBytes = channel.size();
+        }
+        return segment;
+    }
+
+    private int writeLine(OutputStream out, Map<String, Object> event) throws IOException {
+        byte[] line = objectMapper.writeValueAsBytes(event);
+        out.write(line);
+        out.write(NEW_LINE);
+        return line.length + 1;
+    }
+
+    private static final class Segment {
+
+        private long firstId;
+
+        private long lastId;
+
+        private long events;
+
+        private long uncompressedBytes;
+
+        private long compressedBytes;
+    }
+
+    /**
+     * The archived segments of a day.
+     */
+    private static final class Day {
+
+        private int segments;
+
+        private long events;
+
+        private long deleted;
+
+        private long uncompressedBytes;
+
+        private long compressedBytes;
+
+        private void add(Segment segment) {
+            segments++;
+            events += segment.events;
+            uncompressedBytes += segment.uncompressedBytes;
+            compressedBytes += segment.compressedBytes;
+        }
+    }
+
+    /**
+     * The channel is closed by its owner, after it has been forced to disk.
+     */
+    private static final class KeepOpenOutputStream extends FilterOutputStream {
+
+        private KeepOpenOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.kripstanx.service;
+
+import com.kripstanx.config.ApplicationProperties;
+import com.kripstanx.config.ApplicationProperties.Partitioning.Granularity;
+import com.kripstanx.domain.PersistentAuditEvent;
+import org.hibernate.query.NativeQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Maintains the date range partitions of {@code persistent_audit_event}, see the audit-partitioning Liquibase context.
+ * <p>
+ * Events are written to the partition of their period, the partitions of the next periods are split off
+ * {@code p_future} ahead of time. Purging drops the partitions older than the purge date instead of deleting their
+ * events one by one.
+ */
+@Service
+public class AuditEventPartitionManager {
+
+    static final String PARTITION_PURGE_TASK_NAME = "Purge_AuditEvent_Partition";
+
+    private static final String FUTURE_PARTITION = "p_future";
+
+    private static final Pattern PERIOD_PARTITION = Pattern.compile("p\\d+");
+
+    /**
+     * The bounds of the {@code RANGE COLUMNS(event_date)} partitions, in UTC like the stored event dates.
+     */
+    private static final DateTimeFormatter BOUND_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static final String SELECT_PARTITIONS_SQL =
+        "select partition_name, partition_description, table_rows, data_length + index_length " +
+        "from information_schema.partitions " +
+        "where table_schema = database() and table_name = 'persistent_audit_event' and partition_name is not null " +
+        "order by partition_ordinal_position";
+
+    private final Logger log = LoggerFactory.getLogger(AuditEventPartitionManager.class);
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final DataSource dataSource;
+
+    private final ArchiveAndPurgeLogService archiveAndPurgeLogService;
+
+    private final ApplicationProperties.Partitioning properties;
+
+    private volatile Boolean enabled;
+
+    public AuditEventPartitionManager(PlatformTransactionManager transactionManager,
+                                      DataSource dataSource,
+                                      ArchiveAndPurgeLogService archiveAndPurgeLogService,
+                                      ApplicationProperties applicationProperties) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.dataSource = dataSource;
+        this.archiveAndPurgeLogService = archiveAndPurgeLogService;
+        this.properties = applicationProperties.getAudit().getPartitioning();
+    }
+
+    /**
+     * @return true if partitioning is enabled and the database is MySQL, otherwise the audit events are purged by
+     * chunked deletes
+     */
+    public boolean isEnabled() {
+        if (enabled == null) {
+            enabled = properties.isEnabled() && isMySql();
+        }
+        return enabled;
+    }
+
+    private boolean isMySql() {
+        try (Connection connection = dataSource.getConnection()) {
+            return connection.getMetaData().getDatabaseProductName().toLowerCase(Locale.ROOT).contains("mysql");
+        } catch (SQLException e) {
+            log.warn("Could not detect the database, audit event partitioning disabled: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        try {
+            maintain();
+        } catch (RuntimeException e) {
+            log.warn("Could not create the audit event partitions: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Split the partitions of the coming periods off {@code p_future}.
+     */
+    @Scheduled(cron = "${application.audit.partitioning.maintenance-cron:0 30 0 * * *}")
+    public void maintain() {
+        if (!isEnabled()) {
+            return;
+        }
+        List<Partition> partitions = getPartitions();
+        if (partitions.stream().noneMatch(partition -> FUTURE_PARTITION.equals(partition.name))) {
+            log.warn("persistent_audit_event is not partitioned, run the audit-partitioning Liquibase context");
+            return;
+        }
+        LocalDate last = partitions.stream()
+                                   .filter(partition -> PERIOD_PARTITION.matcher(partition.name).matches())
+                                   .map(partition -> partition.upperBound)
+                                   .max(Instant::compareTo)
+                                   .map(bound -> bound.atZone(ZoneOffset.UTC).toLocalDate())
+                                   .orElse(null);
+        LocalDate from = last != null ? last : periodStart(getOldestEventDate());
+        LocalDate until = next(periodStart(LocalDate.now(ZoneOffset.UTC)), properties.getPartitionsAhead() + 1);
+        List<String> definitions = new ArrayList<>();
+        for (LocalDate start = from; start.isBefore(until); start = next(start, 1)) {
+            definitions.add("PARTITION " + partitionName(start) +
+                            " VALUES LESS THAN ('" + next(start, 1).atStartOfDay().format(BOUND_FORMAT) + "')");
+        }
+        if (definitions.isEmpty()) {
+            return;
+        }
+        definitions.add("PARTITION " + FUTURE_PARTITION + " VALUES LESS THAN MAXVALUE");
+        execute("ALTER TABLE persistent_audit_event REORGANIZE PARTITION " + FUTURE_PARTITION + " INTO (" +
+                String.join(", ", definitions) + ")");
+        log.info("Created {} audit event partitions from {}", definitions.size() - 1, from);
+    }
+
+    /**
+     * @return the latest partition bound not after the given time, all the events before it can be purged by
+     * dropping partitions; null if there is none
+     */
+    public Instant getDroppableBound(Instant before) {
+        return getPartitions().stream()
+                              .filter(partition -> partition.upperBound != null && !partition.upperBound.isAfter(before))
+                              .map(partition -> partition.upperBound)
+                              .max(Instant::compareTo)
+                              .orElse(null);
+    }
+
+    /**
+     * Drop the partitions holding only events before the given bound.
+     *
+     * @return the number of dropped events, as estimated by the table statistics
+     */
+    public long dropPartitionsBefore(Instant bound) {
+        long dropped = 0;
+        for (Partition partition : getPartitions()) {
+            if (partition.upperBound == null || partition.upperBound.isAfter(bound)) {
+                continue;
+            }
+            execute("ALTER TABLE persistent_audit_event DROP PARTITION " + partition.name);
+            archiveAndPurgeLogService.save(PARTITION_PURGE_TASK_NAME, partition.rows, partition.bytes / 1024 / 1024);
+            log.info("Dropped audit event partition {} of about {} events", partition.name, partition.rows);
+            dropped += partition.rows;
+        }
+        return dropped;
+    }
+
+    private void execute(String ddl) {
+        transactionTemplate.execute(status -> entityManager.createNativeQuery(ddl)
+                                                           .unwrap(NativeQuery.class)
+                                                           .addSynchronizedEntityClass(PersistentAuditEvent.class)
+                                                           .executeUpdate());
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Partition> getPartitions() {
+        List<Object[]> rows = entityManager.createNativeQuery(SELECT_PARTITIONS_SQL).getResultList();
+        return rows.stream().map(Partition::new).collect(Collectors.toList());
+    }
+
+    private LocalDate getOldestEventDate() {
+        Instant oldest = entityManager.createQuery("select min(e.auditEventDate) from PersistentAuditEvent e", Instant.class)
+                                      .getSingleResult();
+        return (oldest != null ? oldest : Instant.now()).atZone(ZoneOffset.UTC).toLocalDate();
+    }
+
+    private LocalDate periodStart(LocalDate date) {
+        return properties.getGranularity() == Granularity.DAY ? date : date.withDayOfMonth(1);
+    }
+
+    private LocalDate next(LocalDate periodStart, int periods) {
+        return properties.getGranularity() == Granularity.DAY ? periodStart.plusDays(periods) : periodStart.plusMonths(periods);
+    }
+
+    private String partitionName(LocalDate periodStart) {
+        return "p" + periodStart.format(properties.getGranularity() == Granularity.DAY
+                                        ? DateTimeFormatter.BASIC_ISO_DATE
+                                        : DateTimeFormatter.ofPattern("yyyyMM"));
+    }
+
+    private static final class Partition {
+
+        private final String name;
+
+        /**
+         * Exclusive upper bound of the event dates, null for {@code p_future}.
+         */
+        private final Instant upperBound;
+
+        private final long rows;
+
+        private final long bytes;
+
+        private Partition(Object[] row) {
+            this.name = (String) row[0];
+            String description = (String) row[1];
+            this.upperBound = description == null || "MAXVALUE".equalsIgnoreCase(description)
+                ? null
+                : LocalDateTime.parse(description.replace("'", "").trim(), BOUND_FORMAT).toInstant(ZoneOffset.UTC);
+            this.rows = row[2] != null ? ((Number) row[2]).longValue() : 0;
+            this.bytes = row[3] != null ? ((Number) row[3]).longValue() : 0;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.kripstanx.service;
+
+import com.kripstanx.config.ApplicationProperties;
+import com.kripstanx.domain.PersistentAuditEvent;
+import org.hibernate.query.NativeQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Deletes old audit events in chunks of consecutive ids, each chunk in its own transaction.
+ * <p>
+ * The events are never loaded: the ids of a chunk are selected, then the events of that id range are deleted with one
+ * statement. The age condition is repeated in the delete, so an event written later with an id inside the range is
+ * kept.
+ */
+@Service
+public class AuditEventPurger {
+
+    static final String PURGE_TASK_NAME = "Purge_AuditEvent";
+
+    private static final String DELETE_EVENTS_SQL =
+        "delete from persistent_audit_event where event_id between :fromId and :toId and event_date < :before";
+
+    private static final String DELETE_ARCHIVED_EVENTS_SQL =
+        "delete from persistent_audit_event where event_id between :fromId and :toId " +
+        "and event_date >= :from and event_date < :to";
+
+    private final Logger log = LoggerFactory.getLogger(AuditEventPurger.class);
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final ArchiveAndPurgeLogService archiveAndPurgeLogService;
+
+    private final ApplicationProperties.Purge properties;
+
+    public AuditEventPurger(PlatformTransactionManager transactionManager,
+                            ArchiveAndPurgeLogService archiveAndPurgeLogService,
+                            ApplicationProperties applicationProperties) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.archiveAndPurgeLogService = archiveAndPurgeLogService;
+        this.properties = applicationProperties.getAudit().getPurge();
+    }
+
+    /**
+     * Delete the audit events older than the given time.
+     *
+     * @return the number of deleted events
+     */
+    public long purge(Instant before) {
+        log.info("Purging the audit events before {}", before);
+        long deletedEvents = 0;
+        int chunks = 0;
+        while (true) {
+            Chunk chunk = transactionTemplate.execute(status -> purgeChunk(before));
+            if (chunk == null || chunk.events == 0) {
+                break;
+            }
+            chunks++;
+            deletedEvents += chunk.events;
+            if (chunks % properties.getProgressLogInterval() == 0) {
+                log.info("Purged {} audit events in {} chunks, up to id {}", deletedEvents, chunks, chunk.toId);
+            }
+            if (!pause()) {
+                log.warn("Audit event purge interrupted");
+                break;
+            }
+        }
+        log.info("Purged {} audit events in {} chunks", deletedEvents, chunks);
+        return deletedEvents;
+    }
+
+    /**
+     * Delete the audit events of an id range within a time range in one transaction, once they have been archived.
+     *
+     * @return the number of deleted events
+     */
+    public long purge(Instant from, Instant to, long fromId, long toId) {
+        Integer events = transactionTemplate.execute(status -> entityManager.createNativeQuery(DELETE_ARCHIVED_EVENTS_SQL)
+                                                                            .unwrap(NativeQuery.class)
+                                                                            .addSynchronizedEntityClass(PersistentAuditEvent.class)
+                                                                            .setParameter("fromId", fromId)
+                                                                            .setParameter("toId", toId)
+                                                                            .setParameter("from", from)
+                                                                            .setParameter("to", to)
+                                                                            .executeUpdate());
+        return events != null ? events : 0;
+    }
+
+    private Chunk purgeChunk(Instant before) {
+        List<Long> ids = entityManager
+            .createQuery("select e.id from PersistentAuditEvent e where e.auditEventDate < :before order by e.id", Long.class)
+            .setParameter("before", before)
+            .setMaxResults(properties.getChunkSize())
+            .getResultList();
+        if (ids.isEmpty()) {
+            return new Chunk(0, null);
+        }
+        Long fromId = ids.get(0);
+        Long toId = ids.get(ids.size() - 1);
+        int events = delete(DELETE_EVENTS_SQL, fromId, toId, before);
+        archiveAndPurgeLogService.save(PURGE_TASK_NAME, (long) events, null);
+        return new Chunk(events, toId);
+    }
+
+    /**
+     * Native deletes, declared as touching the audit events only so the rest of the second-level cache is kept.
+     */
+    private int delete(String sql, Long fromId, Long toId, Instant before) {
+        return entityManager.createNativeQuery(sql)
+                            .unwrap(NativeQuery.class)
+                            .addSynchronizedEntityClass(PersistentAuditEvent.class)
+                            .setParameter("fromId", fromId)
+                            .setParameter("toId", toId)
+                            .setParameter("before", before)
+                            .executeUpdate();
+    }
+
+    private boolean pause() {
+        if (properties.getPauseBetweenChunksMs() <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(properties.getPauseBetweenChunksMs());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static final class Chunk {
+
+        private final int events;
+
+        private final Long toId;
+
+        private Chunk(int events, Long toId) {
+            this.events = events;
+            this.toId = toId;
+        }
+    }
+}
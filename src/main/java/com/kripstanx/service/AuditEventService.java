@@ -1,19 +1,29 @@
 package com.kripstanx.service;
 
+import com.kripstanx.config.ApplicationProperties;
+import com.kripstanx.config.audit.AsyncAuditEventWriter;
 import com.kripstanx.config.audit.AuditEventConverter;
 import com.kripstanx.domain.PersistentAuditEvent;
 import com.kripstanx.repository.PersistenceAuditEventRepository;
+import com.kripstanx.repository.TableStatisticsRepository;
+import com.kripstanx.service.dto.CursorSlice;
+import com.kripstanx.service.util.KeysetCursor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.actuate.audit.AuditEvent;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -30,15 +40,33 @@ public class AuditEventService {
 
     private final AuditEventConverter auditEventConverter;
 
-    private final ArchiveAndPurgeLogService archiveAndPurgeLogService;
+    private final AsyncAuditEventWriter asyncAuditEventWriter;
+
+    private final AuditEventPurger auditEventPurger;
+
+    private final AuditEventArchiver auditEventArchiver;
+
+    private final AuditEventPartitionManager auditEventPartitionManager;
+
+    private final TableStatisticsRepository tableStatisticsRepository;
+
+    private final boolean archiveEnabled;
 
     public AuditEventService(
         PersistenceAuditEventRepository persistenceAuditEventRepository,
-        AuditEventConverter auditEventConverter, ArchiveAndPurgeLogService archiveAndPurgeLogService) {
+        AuditEventConverter auditEventConverter,
+        AsyncAuditEventWriter asyncAuditEventWriter, AuditEventPurger auditEventPurger,
+        AuditEventArchiver auditEventArchiver, AuditEventPartitionManager auditEventPartitionManager,
+        TableStatisticsRepository tableStatisticsRepository, ApplicationProperties applicationProperties) {
 
         this.persistenceAuditEventRepository = persistenceAuditEventRepository;
         this.auditEventConverter = auditEventConverter;
-        this.archiveAndPurgeLogService = archiveAndPurgeLogService;
+        this.asyncAuditEventWriter = asyncAuditEventWriter;
+        this.auditEventPurger = auditEventPurger;
+        this.auditEventArchiver = auditEventArchiver;
+        this.auditEventPartitionManager = auditEventPartitionManager;
+        this.tableStatisticsRepository = tableStatisticsRepository;
+        this.archiveEnabled = applicationProperties.getAudit().getArchive().isEnabled();
     }
 
     public Page<AuditEvent> findAll(Pageable pageable) {
@@ -51,6 +79,62 @@ public class AuditEventService {
                                               .map(auditEventConverter::convertToAuditEvent);
     }
 
+    /**
+     * Keyset pagination of the audit events, latest first.
+     *
+     * @param cursor           the continuation token of the previous slice, null for the first slice
+     * @param size             the number of events of the slice, at most {@link CursorSlice#MAX_SIZE}
+     * @param approximateTotal whether to add the approximate number of events from the table statistics
+     * @throws IllegalArgumentException if the cursor or the size is invalid
+     */
+    @Transactional(readOnly = true)
+    public CursorSlice<AuditEvent> findAll(String cursor, int size, boolean approximateTotal) {
+        KeysetCursor after = KeysetCursor.decode(cursor);
+        PageRequest limit = PageRequest.of(0, CursorSlice.checkSize(size) + 1);
+        List<PersistentAuditEvent> events;
+        if (after != null && after.getInstantKey() == null) {
+            events = persistenceAuditEventRepository.findWithoutDateAfterCursor(after.getId(), limit);
+        } else {
+            events = after == null
+                ? persistenceAuditEventRepository.findAllWithDateOrderByAuditEventDateDescIdDesc(limit)
+                : persistenceAuditEventRepository.findAfterCursor(after.getInstantKey(), after.getId(), limit);
+            if (events.size() < limit.getPageSize()) {
+                // the dated events are exhausted, the ones without a date follow
+                events = new ArrayList<>(events);
+                events.addAll(persistenceAuditEventRepository.findWithoutDateAfterCursor(
+                    Long.MAX_VALUE, PageRequest.of(0, limit.getPageSize() - events.size())));
+            }
+        }
+        Long total = approximateTotal
+            ? tableStatisticsRepository.estimateRowCount("persistent_audit_event").orElse(null)
+            : null;
+        return CursorSlice.of(events, size, AuditEventService::cursorOf, auditEventConverter::convertToAuditEvent, total);
+    }
+
+    /**
+     * Keyset pagination of the audit events between two dates, latest first.
+     *
+     * @param cursor the continuation token of the previous slice, null for the first slice
+     * @param size   the number of events of the slice, at most {@link CursorSlice#MAX_SIZE}
+     * @throws IllegalArgumentException if the cursor or the size is invalid
+     */
+    @Transactional(readOnly = true)
+    public CursorSlice<AuditEvent> findByDates(Instant fromDate, Instant toDate, String cursor, int size) {
+        KeysetCursor after = KeysetCursor.decode(cursor);
+        PageRequest limit = PageRequest.of(0, CursorSlice.checkSize(size) + 1);
+        if (after != null && after.getInstantKey() == null) {
+            throw new IllegalArgumentException("Invalid cursor, events without a date are not between dates: " + cursor);
+        }
+        List<PersistentAuditEvent> events = after == null
+            ? persistenceAuditEventRepository.findAllByAuditEventDateBetweenOrderByAuditEventDateDescIdDesc(fromDate, toDate, limit)
+            : persistenceAuditEventRepository.findBetweenAfterCursor(fromDate, toDate, after.getInstantKey(), after.getId(), limit);
+        return CursorSlice.of(events, size, AuditEventService::cursorOf, auditEventConverter::convertToAuditEvent, null);
+    }
+
+    private static KeysetCursor cursorOf(PersistentAuditEvent event) {
+        return KeysetCursor.of(event.getAuditEventDate(), event.getId());
+    }
+
     public Optional<AuditEvent> find(Long id) {
         return Optional.ofNullable(persistenceAuditEventRepository.findById(id))
                        .filter(Optional::isPresent)
@@ -59,9 +143,10 @@ public class AuditEventService {
     }
 
     public List<AuditEvent> findTop3ByPrincipalOrderByAuditEventDateDesc(String principal) {
-        Iterable<PersistentAuditEvent> persistentAuditEvents = persistenceAuditEventRepository.findTop3ByPrincipalIgnoreCaseOrderByAuditEventDateDesc(
+        List<PersistentAuditEvent> pendingEvents = getPendingEvents(principal, null);
+        List<PersistentAuditEvent> persistentAuditEvents = persistenceAuditEventRepository.findTop3ByPrincipalIgnoreCaseOrderByAuditEventDateDesc(
             principal);
-        return auditEventConverter.convertToAuditEvent(persistentAuditEvents);
+        return auditEventConverter.convertToAuditEvent(mergeLatest(pendingEvents, persistentAuditEvents, 3));
     }
 
     public List<AuditEvent> getAuditEventsByUserOrderByAuditEventDateDesc(String userName) {
@@ -73,28 +158,67 @@ public class AuditEventService {
     }
 
     public List<AuditEvent> getSuccesfulAuditEventsByUserOrderByAuditEventDateDesc(String userName) {
+        List<PersistentAuditEvent> pendingEvents = getPendingEvents(userName, "AUTHENTICATION_SUCCESS");
         List<PersistentAuditEvent> persistentAuditEvents = persistenceAuditEventRepository.findTop2ByPrincipalIgnoreCaseAndAuditEventTypeOrderByAuditEventDateDesc(
             userName,
             "AUTHENTICATION_SUCCESS");
-        return persistentAuditEvents.stream()
+        return mergeLatest(pendingEvents, persistentAuditEvents, 2).stream()
                                     .map(auditEventConverter::convertToAuditEvent)
                                     .collect(Collectors.toList());
     }
 
-    public void purge(int olderThanInDays) {
-        log.info("Purge olderThanInDays {}", olderThanInDays);
-        long originalTableCount = persistenceAuditEventRepository.count();
-        long originalTableSize = archiveAndPurgeLogService.getTableSize("jhi_persistent_audit_event");
-
-        List<PersistentAuditEvent> oldRows = persistenceAuditEventRepository
-            .findByAuditEventDateBefore(ArchiveAndPurgeLogService.getOlderThanInstant(olderThanInDays));
+    /**
+     * The events of the principal which are not written yet, they must be read before the stored ones.
+     */
+    private List<PersistentAuditEvent> getPendingEvents(String principal, String eventType) {
+        return asyncAuditEventWriter.getPendingEvents()
+                                    .stream()
+                                    .filter(event -> event.getPrincipal().equalsIgnoreCase(principal))
+                                    .filter(event -> eventType == null || eventType.equals(event.getAuditEventType()))
+                                    .collect(Collectors.toList());
+    }
 
-        persistenceAuditEventRepository.deleteAll(oldRows);
+    /**
+     * @return the latest of the pending and the stored events, a pending event written in the meantime is only
+     * returned once
+     */
+    private static List<PersistentAuditEvent> mergeLatest(List<PersistentAuditEvent> pendingEvents,
+                                                          List<PersistentAuditEvent> storedEvents,
+                                                          int limit) {
+        if (pendingEvents.isEmpty()) {
+            return storedEvents;
+        }
+        Set<Long> storedIds = storedEvents.stream().map(PersistentAuditEvent::getId).collect(Collectors.toSet());
+        List<PersistentAuditEvent> events = new ArrayList<>(storedEvents);
+        pendingEvents.stream()
+                     .filter(event -> event.getId() == null || !storedIds.contains(event.getId()))
+                     .forEach(events::add);
+        return events.stream()
+                     .sorted(Comparator.comparing(PersistentAuditEvent::getAuditEventDate,
+                                                  Comparator.nullsLast(Comparator.reverseOrder())))
+                     .limit(limit)
+                     .collect(Collectors.toList());
+    }
 
-        long currentTableCount = persistenceAuditEventRepository.count();
-        long currentTableSize = archiveAndPurgeLogService.getTableSize("jhi_persistent_audit_event");
-        archiveAndPurgeLogService.save("Purge_AuditEvent",
-                                       originalTableCount - currentTableCount,
-                                       originalTableSize - currentTableSize);
+    /**
+     * Runs outside of any transaction, the archiver and the purger commit each chunk on its own. When archiving is
+     * enabled, events are only deleted once they have been archived. With partitioning, the whole partitions before the
+     * purge date are dropped first, the remaining events are deleted in chunks.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void purge(int olderThanInDays) {
+        log.info("Purge olderThanInDays {}", olderThanInDays);
+        Instant before = ArchiveAndPurgeLogService.getOlderThanInstant(olderThanInDays);
+        if (auditEventPartitionManager.isEnabled()) {
+            Instant bound = auditEventPartitionManager.getDroppableBound(before);
+            if (bound != null && (!archiveEnabled || auditEventArchiver.archiveOnly(bound))) {
+                auditEventPartitionManager.dropPartitionsBefore(bound);
+            }
+        }
+        if (archiveEnabled) {
+            auditEventArchiver.archive(before);
+        } else {
+            auditEventPurger.purge(before);
+        }
     }
 }
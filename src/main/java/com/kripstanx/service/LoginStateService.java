@@ -0,0 +1,134 @@
+package com.kripstanx.service;
+
+import com.kripstanx.domain.UserLoginState;
+import com.kripstanx.repository.UserLoginStateRepository;
+import com.kripstanx.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.audit.AuditEvent;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Consecutive failed logins and last successful login of the users, for the lockout and inactivity checks.
+ * <p>
+ * The {@code user_login_state} table is the only source of truth: the state of a user is read and updated in a
+ * transaction holding the lock of the {@code user} row, so concurrent logins on any node of the cluster are serialized
+ * and none of them is lost. A user without a stored state, e.g. right after the table was introduced, is seeded from
+ * the audit history in the same transaction.
+ */
+@Service
+public class LoginStateService {
+
+    private static final String AUTHENTICATION_FAILURE = "AUTHENTICATION_FAILURE";
+
+    private final Logger log = LoggerFactory.getLogger(LoginStateService.class);
+
+    private final UserLoginStateRepository userLoginStateRepository;
+
+    private final UserRepository userRepository;
+
+    private final AuditEventService auditEventService;
+
+    public LoginStateService(UserLoginStateRepository userLoginStateRepository,
+                             UserRepository userRepository,
+                             AuditEventService auditEventService) {
+        this.userLoginStateRepository = userLoginStateRepository;
+        this.userRepository = userRepository;
+        this.auditEventService = auditEventService;
+    }
+
+    /**
+     * Record a successful login and reset the failed attempts.
+     *
+     * @param username    the login of the user
+     * @param attemptedAt the time of the login attempt
+     * @return the time of the previous successful login, if any
+     */
+    @Transactional
+    public Optional<Instant> loginSucceeded(String username, Instant attemptedAt) {
+        return lockState(username, attemptedAt).map(state -> {
+            Instant previousSuccessDate = state.getLastSuccessDate();
+            state.setFailedAttempts(0);
+            state.setLastSuccessDate(attemptedAt);
+            return previousSuccessDate;
+        });
+    }
+
+    /**
+     * Record a failed login.
+     *
+     * @param username    the login of the user
+     * @param attemptedAt the time of the login attempt
+     * @return the number of failed logins since the last successful one, 0 for unknown users
+     */
+    @Transactional
+    public int loginFailed(String username, Instant attemptedAt) {
+        return lockState(username, attemptedAt).map(state -> {
+            state.setFailedAttempts(state.getFailedAttempts() + 1);
+            return state.getFailedAttempts();
+        }).orElse(0);
+    }
+
+    /**
+     * Forget the login state of a deleted user.
+     */
+    @Transactional
+    public void remove(String username) {
+        String key = username.toLowerCase(Locale.ENGLISH);
+        if (userLoginStateRepository.existsById(key)) {
+            userLoginStateRepository.deleteById(key);
+        }
+    }
+
+    /**
+     * Lock the {@code user} row, which exists even before the state is seeded, so a missing state is never locked:
+     * on MySQL that would take a gap lock, blocking the inserts of the concurrent logins until a lock wait timeout.
+     * The returned state stays locked until the current transaction ends, and its changes are written on commit.
+     *
+     * @return the state of the user, or empty if there is no such user
+     */
+    private Optional<UserLoginState> lockState(String username, Instant attemptedAt) {
+        String key = username.toLowerCase(Locale.ENGLISH);
+        if (!userRepository.findOneForUpdateByUsername(key).isPresent()) {
+            return Optional.empty();
+        }
+        // a locking read, it sees the state committed by the previous login even under REPEATABLE READ
+        Optional<UserLoginState> state = userLoginStateRepository.findOneForUpdate(key);
+        if (state.isPresent()) {
+            return state;
+        }
+        return Optional.of(userLoginStateRepository.save(seed(key, attemptedAt)));
+    }
+
+    /**
+     * Derive the state from the audit events older than the current attempt.
+     */
+    private UserLoginState seed(String username, Instant attemptedAt) {
+        UserLoginState state = new UserLoginState().username(username);
+        auditEventService.getSuccesfulAuditEventsByUserOrderByAuditEventDateDesc(username)
+                         .stream()
+                         .filter(event -> event.getTimestamp().isBefore(attemptedAt))
+                         .findFirst()
+                         .ifPresent(event -> state.setLastSuccessDate(event.getTimestamp()));
+        int failedAttempts = 0;
+        List<AuditEvent> lastAttempts = auditEventService.findTop3ByPrincipalOrderByAuditEventDateDesc(username);
+        for (AuditEvent event : lastAttempts) {
+            if (!event.getTimestamp().isBefore(attemptedAt)) {
+                continue;
+            }
+            if (!AUTHENTICATION_FAILURE.equals(event.getType())) {
+                break;
+            }
+            failedAttempts++;
+        }
+        state.setFailedAttempts(failedAttempts);
+        log.debug("Seeded {} from the audit history", state);
+        return state;
+    }
+}
@@ -4,20 +4,36 @@ import com.kripstanx.config.Constants;
 import com.kripstanx.domain.Authority;
 import com.kripstanx.domain.User;
 import com.kripstanx.repository.AuthorityRepository;
+import com.kripstanx.repository.TableStatisticsRepository;
 import com.kripstanx.repository.UserRepository;
 import com.kripstanx.security.AuthoritiesConstants;
 import com.kripstanx.security.SecurityUtils;
+import com.kripstanx.security.SessionRevocationList;
+import com.kripstanx.security.SessionTokenRegistry;
+import com.kripstanx.service.builder.QuickSearchRegistration;
+import com.kripstanx.service.cluster.ClusterInvalidationService;
 import com.kripstanx.service.dto.AdminUserDTO;
+import com.kripstanx.service.dto.CursorSlice;
 import com.kripstanx.service.dto.UserDTO;
+import com.kripstanx.service.search.ExportFormat;
+import com.kripstanx.service.search.QuickSearchExporter;
+import com.kripstanx.service.util.KeysetCursor;
+import com.kripstanx.service.util.TransactionUtil;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.cache.CacheManager;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
@@ -41,16 +57,44 @@ public class UserService {
 
     private final CacheManager cacheManager;
 
+    private final SessionTokenRegistry sessionTokenRegistry;
+
+    private final SessionRevocationList sessionRevocationList;
+
+    private final ClusterInvalidationService clusterInvalidationService;
+
+    private final LoginStateService loginStateService;
+
+    private final TableStatisticsRepository tableStatisticsRepository;
+
+    private final QuickSearchRegistration<User> userQuickSearchRegistration;
+
+    private final QuickSearchExporter quickSearchExporter;
+
     public UserService(
         UserRepository userRepository,
         PasswordEncoder passwordEncoder,
         AuthorityRepository authorityRepository,
-        CacheManager cacheManager
+        CacheManager cacheManager,
+        SessionTokenRegistry sessionTokenRegistry,
+        SessionRevocationList sessionRevocationList,
+        ClusterInvalidationService clusterInvalidationService,
+        LoginStateService loginStateService,
+        TableStatisticsRepository tableStatisticsRepository,
+        QuickSearchRegistration<User> userQuickSearchRegistration,
+        QuickSearchExporter quickSearchExporter
     ) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
         this.authorityRepository = authorityRepository;
         this.cacheManager = cacheManager;
+        this.sessionTokenRegistry = sessionTokenRegistry;
+        this.sessionRevocationList = sessionRevocationList;
+        this.clusterInvalidationService = clusterInvalidationService;
+        this.loginStateService = loginStateService;
+        this.tableStatisticsRepository = tableStatisticsRepository;
+        this.userQuickSearchRegistration = userQuickSearchRegistration;
+        this.quickSearchExporter = quickSearchExporter;
     }
 
     public Optional<User> activateRegistration(String key) {
@@ -204,6 +248,11 @@ public class UserService {
             .map(
                 user -> {
                     this.clearUserCaches(user);
+                    boolean renamed = !user.getUsername().equals(userDTO.getUsername().toLowerCase());
+                    if (renamed || (user.isActiveIndicator() && !userDTO.isActiveIndicator())) {
+                        // by the old username, the tokens of a renamed user must not outlive the rename
+                        revokeSessions(user);
+                    }
                     user.setUsername(userDTO.getUsername().toLowerCase());
                     user.setFirstName(userDTO.getFirstName());
                     user.setLastName(userDTO.getLastName());
@@ -237,6 +286,8 @@ public class UserService {
                 user -> {
                     userRepository.delete(user);
                     this.clearUserCaches(user);
+                    revokeSessions(user);
+                    loginStateService.remove(user.getUsername());
                     log.debug("Deleted User: {}", user);
                 }
             );
@@ -257,6 +308,7 @@ public class UserService {
             .flatMap(userRepository::findOneByUsername)
             .ifPresent(
                 user -> {
+                    this.clearUserCaches(user);
                     user.setFirstName(firstName);
                     user.setLastName(lastName);
                     if (email != null) {
@@ -294,6 +346,65 @@ public class UserService {
         return userRepository.findAll(pageable).map(AdminUserDTO::new);
     }
 
+    /**
+     * Keyset pagination of the users by username.
+     *
+     * @param cursor           the continuation token of the previous slice, null for the first slice
+     * @param size             the number of users of the slice, at most {@link CursorSlice#MAX_SIZE}
+     * @param approximateTotal whether to add the approximate number of users from the table statistics
+     * @throws IllegalArgumentException if the cursor or the size is invalid
+     */
+    @Transactional(readOnly = true)
+    public CursorSlice<AdminUserDTO> getAllManagedUsers(String cursor, int size, boolean approximateTotal) {
+        KeysetCursor after = KeysetCursor.decode(cursor);
+        PageRequest limit = PageRequest.of(0, CursorSlice.checkSize(size) + 1);
+        List<User> users = after == null
+            ? userRepository.findAllByOrderByUsernameAscIdAsc(limit)
+            : userRepository.findAfterCursor(after.getKey(), after.getId(), limit);
+        Long total = approximateTotal ? tableStatisticsRepository.estimateRowCount("user").orElse(null) : null;
+        return CursorSlice.of(users, size, user -> KeysetCursor.of(user.getUsername(), user.getId()), AdminUserDTO::new, total);
+    }
+
+    /**
+     * @param quickSearchText the searched text, URL encoded, null for every user
+     * @return the specification of the users matching the quick search, null for every user
+     * @throws IllegalArgumentException if the text is not properly URL encoded
+     */
+    @Transactional(readOnly = true)
+    public Specification<User> getQuickSearchSpecification(String quickSearchText) {
+        return userQuickSearchRegistration.toSpecification(quickSearchText);
+    }
+
+    /**
+     * Stream the users matching a quick search, ordered by username.
+     *
+     * @param specification the users to export, see {@link #getQuickSearchSpecification(String)}, null for every user
+     * @param format        the output format
+     * @param out           the output, left open
+     * @return the number of exported users
+     */
+    @Transactional(readOnly = true)
+    public long exportManagedUsers(Specification<User> specification, ExportFormat format, OutputStream out) throws IOException {
+        Map<String, Function<User, ?>> columns = new LinkedHashMap<>();
+        columns.put("id", User::getId);
+        columns.put("username", User::getUsername);
+        columns.put("firstName", User::getFirstName);
+        columns.put("lastName", User::getLastName);
+        columns.put("email", User::getEmail);
+        columns.put("activated", User::isActiveIndicator);
+        columns.put("langKey", User::getLangKey);
+        columns.put("createdBy", User::getCreatedBy);
+        columns.put("createdDate", User::getCreatedDate);
+        columns.put("lastModifiedBy", User::getLastModifiedBy);
+        columns.put("lastModifiedDate", User::getLastModifiedDate);
+        return quickSearchExporter.export(User.class,
+                                          specification,
+                                          Sort.by("username", "id"),
+                                          columns,
+                                          format,
+                                          out);
+    }
+
     @Transactional(readOnly = true)
     public Page<UserDTO> getAllPublicUsers(Pageable pageable) {
         return userRepository.findAllByIdNotNullAndActiveIndicatorIsTrue(pageable).map(UserDTO::new);
@@ -321,6 +432,7 @@ public class UserService {
                 user -> {
                     user.setActiveIndicator(false);
                     this.clearUserCaches(user);
+                    revokeSessions(user);
                     log.debug("Locked User: {}", user);
                 }
             );
@@ -362,10 +474,32 @@ public class UserService {
         return authorityRepository.findAll().stream().map(Authority::getName).collect(Collectors.toList());
     }
 
+    /**
+     * Evict the user by its current username and email. Call it before changing the username or the email as well,
+     * so the old keys are evicted too.
+     * <p>
+     * The entries are evicted again once the transaction has committed, as a concurrent lookup may have cached the
+     * user as it was before the commit in the meantime.
+     */
     private void clearUserCaches(User user) {
-        Objects.requireNonNull(cacheManager.getCache(UserRepository.USERS_BY_USERNAME_CACHE)).evict(user.getUsername());
-        if (user.getEmail() != null) {
-            Objects.requireNonNull(cacheManager.getCache(UserRepository.USERS_BY_EMAIL_CACHE)).evict(user.getEmail());
+        String username = user.getUsername();
+        String email = user.getEmail();
+        evictUserCaches(username, email);
+        TransactionUtil.runAfterCommit(() -> evictUserCaches(username, email));
+        // renamed or deleted users must not keep a valid session under their old username
+        sessionTokenRegistry.evict(username);
+        clusterInvalidationService.userChanged(user.getId(), username, email);
+    }
+
+    private void evictUserCaches(String username, String email) {
+        Objects.requireNonNull(cacheManager.getCache(UserRepository.USERS_BY_USERNAME_CACHE)).evict(username);
+        if (email != null) {
+            Objects.requireNonNull(cacheManager.getCache(UserRepository.USERS_BY_EMAIL_CACHE)).evict(email);
         }
     }
+
+    private void revokeSessions(User user) {
+        sessionRevocationList.revoke(user.getUsername());
+        clusterInvalidationService.sessionRevoked(user.getId(), user.getUsername());
+    }
 }
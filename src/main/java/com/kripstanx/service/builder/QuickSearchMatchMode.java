@@ -0,0 +1,22 @@
+package com.kripstanx.service.builder;
+
+/**
+ * How the searched text, or each of its terms, is matched against a string attribute of the quick search.
+ */
+public enum QuickSearchMatchMode {
+
+    /**
+     * {@code LIKE '%text%'}, scans the whole column.
+     */
+    CONTAINS,
+
+    /**
+     * {@code LIKE 'text%'}, can use an index of the column.
+     */
+    PREFIX,
+
+    /**
+     * {@code = 'text'}, can use an index of the column.
+     */
+    EXACT
+}
@@ -0,0 +1,496 @@
+package com.kripstanx.service.builder;
+
+import com.kripstanx.domain.QuickSearchable;
+import com.kripstanx.service.search.QuickSearchFanOut;
+import com.kripstanx.service.search.QuickSearchIndex;
+import org.apache.commons.lang3.ClassUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.commons.lang3.tuple.Triple;
+import org.springframework.data.jpa.domain.Specification;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.metamodel.SingularAttribute;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * The compiled, immutable quick search of an entity type: its attributes and how they are searched. Compiled once by
+ * {@link QuickSearchSpecBuilder#compile()}, e.g. by a {@link QuickSearchRegistration}, then only the searched text is
+ * bound per query.
+ * <p>
+ * The aliases of the boolean and enum attributes are matched against the searched text in memory: the column itself is
+ * compared to the values whose alias matches, so the predicate can use its index, instead of a {@code CASE} expression
+ * per value. The attribute is not searched at all when no alias matches.
+ */
+public final class QuickSearchPlan<T> {
+
+    private static final DateTimeFormatter INSTANT_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yy HH:mm");
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+    private static final ZoneId LONDON = ZoneId.of("Europe/London");
+
+    /**
+     * Minimum length of the text searched with the full-text function, the ngram token size of the MySQL full-text
+     * index.
+     */
+    private static final int FULL_TEXT_MIN_LENGTH = 2;
+
+    private final List<Pair<SingularAttribute, QuickSearchMatchMode>> stringAttributes;
+    private final List<Pair<SingularAttribute, Integer>> paddedStringAttributes;
+    private final List<Triple<SingularAttribute, String, SingularAttribute>> concatenatedAttributes;
+    private final List<Pair<SingularAttribute, String>> instantAttributes;
+    private final List<SingularAttribute> dateAttributes;
+    /**
+     * The aliased values by attribute, booleans are aliased for their true value.
+     */
+    private final Map<SingularAttribute, List<AliasedValue>> aliasedValues;
+    private final QuickSearchIndex quickSearchIndex;
+    private final QuickSearchFanOut quickSearchFanOut;
+    private final Class<T> entityClass;
+    private final SingularAttribute<? super T, String> searchTextAttribute;
+    private final boolean fullText;
+    private final boolean multiTerm;
+    private final boolean caseInsensitiveCollation;
+    /**
+     * Every attribute is a string attribute matched by prefix: the index and the search text column then match the
+     * start of an attribute as well, instead of any substring, so every strategy finds the same entities.
+     */
+    private final boolean prefixOnly;
+
+    QuickSearchPlan(List<Pair<SingularAttribute, QuickSearchMatchMode>> stringAttributes,
+                    List<Pair<SingularAttribute, Integer>> paddedStringAttributes,
+                    List<Triple<SingularAttribute, String, SingularAttribute>> concatenatedAttributes,
+                    List<Pair<SingularAttribute, String>> instantAttributes,
+                    List<SingularAttribute> dateAttributes,
+                    List<AliasedValue> aliasedValues,
+                    QuickSearchIndex quickSearchIndex,
+                    QuickSearchFanOut quickSearchFanOut,
+                    Class<T> entityClass,
+                    SingularAttribute<? super T, String> searchTextAttribute,
+                    boolean fullText,
+                    boolean multiTerm,
+                    boolean caseInsensitiveCollation) {
+        this.stringAttributes = Collections.unmodifiableList(new ArrayList<>(stringAttributes));
+        this.paddedStringAttributes = Collections.unmodifiableList(new ArrayList<>(paddedStringAttributes));
+        this.concatenatedAttributes = Collections.unmodifiableList(new ArrayList<>(concatenatedAttributes));
+        this.instantAttributes = Collections.unmodifiableList(new ArrayList<>(instantAttributes));
+        this.dateAttributes = Collections.unmodifiableList(new ArrayList<>(dateAttributes));
+        this.aliasedValues = Collections.unmodifiableMap(
+            aliasedValues.stream().collect(Collectors.groupingBy(AliasedValue::getAttribute, LinkedHashMap::new, Collectors.toList())));
+        this.quickSearchIndex = quickSearchIndex;
+        this.quickSearchFanOut = quickSearchFanOut;
+        this.entityClass = entityClass;
+        this.searchTextAttribute = searchTextAttribute;
+        this.fullText = fullText;
+        this.multiTerm = multiTerm;
+        this.caseInsensitiveCollation = caseInsensitiveCollation;
+        this.prefixOnly = !stringAttributes.isEmpty()
+            && stringAttributes.stream().allMatch(pair -> pair.getRight() == QuickSearchMatchMode.PREFIX)
+            && paddedStringAttributes.isEmpty() && concatenatedAttributes.isEmpty() && instantAttributes.isEmpty()
+            && dateAttributes.isEmpty() && aliasedValues.isEmpty();
+    }
+
+    /**
+     * @param quickSearchText the searched text, URL encoded
+     * @return the specification of the entities matching the text, null for an empty text
+     */
+    public Specification<T> toSpecification(String quickSearchText) {
+        if (StringUtils.isEmpty(quickSearchText)) {
+            return null;
+        }
+        String text = QuickSearchSpecBuilder.decode(quickSearchText);
+        List<String> terms = multiTerm ? splitTerms(text) : Collections.singletonList(text);
+        if (terms.isEmpty()) {
+            return null;
+        }
+        if (quickSearchIndex != null) {
+            Optional<Set<Long>> ids = searchIndex(terms);
+            if (ids.isPresent()) {
+                Set<Long> matching = ids.get();
+                return (root, criteriaQuery, criteriaBuilder) -> matching.isEmpty()
+                    ? criteriaBuilder.disjunction()
+                    : root.get("id").in(matching);
+            }
+        }
+        Optional<Set<Long>> fanOutIds = fanOutSpecifications(terms).flatMap(
+            specifications -> quickSearchFanOut.search(entityClass, specifications));
+        if (fanOutIds.isPresent()) {
+            Set<Long> matching = fanOutIds.get();
+            return (root, criteriaQuery, criteriaBuilder) -> matching.isEmpty()
+                ? criteriaBuilder.disjunction()
+                : root.get("id").in(matching);
+        }
+        if (searchTextAttribute != null) {
+            return searchTextSpecification(terms.stream()
+                                                .map(QuickSearchSpecBuilder::normalizeSearchText)
+                                                .collect(Collectors.toList()));
+        }
+        return attributesSpecification(terms);
+    }
+
+    private static List<String> splitTerms(String text) {
+        return Arrays.stream(QuickSearchSpecBuilder.normalizeSearchText(text).split(" "))
+                     .filter(StringUtils::isNotEmpty)
+                     .distinct()
+                     .collect(Collectors.toList());
+    }
+
+    /**
+     * @return the ids matching every term, empty if the index cannot resolve one of them
+     */
+    private Optional<Set<Long>> searchIndex(List<String> terms) {
+        Set<Long> matching = null;
+        for (String term : terms) {
+            Optional<Set<Long>> ids = quickSearchIndex.search(entityClass, term, prefixOnly);
+            if (!ids.isPresent()) {
+                return Optional.empty();
+            }
+            if (matching == null) {
+                matching = new HashSet<>(ids.get());
+            } else {
+                matching.retainAll(ids.get());
+            }
+        }
+        return Optional.of(matching);
+    }
+
+    /**
+     * The cost heuristic of the fan-out: it pays off when every predicate of every term can use an index, and a term
+     * has enough of them to make the optimizer give up on the indexes of an {@code OR}. A full-text search of the search
+     * text column is preferred, the fan-out only replaces its LIKE fallback for the terms too short for it.
+     * <p>
+     * The fan-out honours the match modes of the attributes, so with an index or a search text column it only applies
+     * when those match by prefix too, a search must not change meaning with the length of its terms.
+     *
+     * @return the predicates of every term, empty if the fan-out does not apply
+     */
+    private Optional<List<List<Specification<T>>>> fanOutSpecifications(List<String> terms) {
+        if (quickSearchFanOut == null || !quickSearchFanOut.isEnabled() || isFullTextSearch(terms)
+            || (!prefixOnly && (quickSearchIndex != null || searchTextAttribute != null)) || !caseInsensitiveCollation || !paddedStringAttributes.isEmpty() || !concatenatedAttributes.isEmpty()
+            || !instantAttributes.isEmpty() || !dateAttributes.isEmpty()
+            || stringAttributes.stream().anyMatch(pair -> pair.getRight() == QuickSearchMatchMode.CONTAINS)) {
+            return Optional.empty();
+        }
+        List<List<Specification<T>>> specifications = new ArrayList<>();
+        boolean worthIt = false;
+        for (String term : terms) {
+            String lowerCaseTerm = term.toLowerCase(Locale.ROOT);
+            Map<SingularAttribute, List<Object>> matchingValues = matchingAliasedValues(lowerCaseTerm);
+            if (matchingValues.keySet().stream().anyMatch(attribute -> !isIndexable(attribute, matchingValues.get(attribute)))) {
+                return Optional.empty();
+            }
+            List<Specification<T>> termSpecifications = new ArrayList<>();
+            for (Pair<SingularAttribute, QuickSearchMatchMode> pair : stringAttributes) {
+                termSpecifications.add((root, criteriaQuery, criteriaBuilder) ->
+                    stringPredicate(root, criteriaBuilder, pair.getLeft(), pair.getRight(), lowerCaseTerm));
+            }
+            matchingValues.forEach((attribute, values) -> termSpecifications.add(
+                (root, criteriaQuery, criteriaBuilder) -> aliasPredicate(root, criteriaBuilder, attribute, values)));
+            worthIt |= termSpecifications.size() >= quickSearchFanOut.getMinPredicates();
+            specifications.add(termSpecifications);
+        }
+        return worthIt ? Optional.of(specifications) : Optional.empty();
+    }
+
+    /**
+     * @return whether the alias predicate compares the column itself
+     */
+    private static boolean isIndexable(SingularAttribute attribute, List<Object> values) {
+        Object first = values.get(0);
+        return ClassUtils.isAssignable(first.getClass(), attribute.getJavaType(), true)
+            && !(first instanceof Enum && values.size() == first.getClass().getEnumConstants().length);
+    }
+
+    /**
+     * @return whether the terms are searched in the search text column with the full-text function
+     */
+    private boolean isFullTextSearch(List<String> terms) {
+        return searchTextAttribute != null && fullText
+            && terms.stream().allMatch(term -> QuickSearchSpecBuilder.normalizeSearchText(term).length() >= FULL_TEXT_MIN_LENGTH);
+    }
+
+    /**
+     * Every term is searched anywhere in the search text column, or at the start of one of its attributes when every
+     * attribute is matched by prefix. The other match modes do not apply to the column.
+     */
+    private Specification<T> searchTextSpecification(List<String> terms) {
+        if (isFullTextSearch(terms)) {
+            // a required boolean mode phrase per term, matching the consecutive ngrams of the term, every ngram is
+            // indexed as the index has no stopwords
+            String phrases = terms.stream()
+                                  .map(term -> "+\"" + term.replace('"', ' ') + "\"")
+                                  .collect(Collectors.joining(" "));
+            return (root, criteriaQuery, criteriaBuilder) -> {
+                Predicate match = criteriaBuilder.greaterThan(
+                    criteriaBuilder.function(QuickSearchSpecBuilder.FULL_TEXT_MATCH_FUNCTION, Double.class,
+                                             root.get(searchTextAttribute), criteriaBuilder.literal(phrases)),
+                    0d);
+                // the full-text search finds the substrings, the rows it found are checked for the prefixes
+                return prefixOnly ? criteriaBuilder.and(match, prefixPredicate(root, criteriaBuilder, terms)) : match;
+            };
+        }
+        if (prefixOnly) {
+            return (root, criteriaQuery, criteriaBuilder) -> prefixPredicate(root, criteriaBuilder, terms);
+        }
+        // the column is lower case already, no lower() on it
+        List<String> patterns = terms.stream()
+                                     .map(term -> "%" + QuickSearchSpecBuilder.escapeLike(term) + "%")
+                                     .collect(Collectors.toList());
+        return (root, criteriaQuery, criteriaBuilder) -> criteriaBuilder.and(
+            patterns.stream()
+                    .map(pattern -> criteriaBuilder.like(root.get(searchTextAttribute), pattern, '|'))
+                    .toArray(Predicate[]::new));
+    }
+
+    /**
+     * Every term must start one of the attributes of the search text column, the column is lower case already.
+     */
+    private Predicate prefixPredicate(Root<T> root, CriteriaBuilder cb, List<String> terms) {
+        Expression<String> column = root.get(searchTextAttribute);
+        return cb.and(terms.stream()
+                           .map(QuickSearchSpecBuilder::escapeLike)
+                           .map(term -> cb.or(cb.like(column, term + "%", '|'),
+                                              cb.like(column, "%" + QuickSearchable.SEPARATOR + term + "%", '|')))
+                           .toArray(Predicate[]::new));
+    }
+
+    /**
+     * Every term must match one of the attributes.
+     */
+    private Specification<T> attributesSpecification(List<String> terms) {
+        List<String> lowerCaseTerms = terms.stream().map(term -> term.toLowerCase(Locale.ROOT)).collect(Collectors.toList());
+        List<Map<SingularAttribute, List<Object>>> matchingValues = lowerCaseTerms.stream()
+                                                                                  .map(this::matchingAliasedValues)
+                                                                                  .collect(Collectors.toList());
+        return (root, criteriaQuery, criteriaBuilder) -> {
+            List<Expression<String>> expressions = likeExpressions(root, criteriaBuilder);
+            Predicate[] termPredicates = new Predicate[lowerCaseTerms.size()];
+            for (int i = 0; i < lowerCaseTerms.size(); i++) {
+                String term = lowerCaseTerms.get(i);
+                String pattern = "%" + QuickSearchSpecBuilder.escapeLike(term) + "%";
+                List<Predicate> predicates = new ArrayList<>();
+                for (Pair<SingularAttribute, QuickSearchMatchMode> pair : stringAttributes) {
+                    predicates.add(stringPredicate(root, criteriaBuilder, pair.getLeft(), pair.getRight(), term));
+                }
+                for (Expression<String> expression : expressions) {
+                    predicates.add(criteriaBuilder.like(criteriaBuilder.lower(expression), pattern, '|'));
+                }
+                matchingValues.get(i).forEach(
+                    (attribute, values) -> predicates.add(aliasPredicate(root, criteriaBuilder, attribute, values)));
+                termPredicates[i] = criteriaBuilder.or(predicates.toArray(new Predicate[0]));
+            }
+            return termPredicates.length == 1 ? termPredicates[0] : criteriaBuilder.and(termPredicates);
+        };
+    }
+
+    /**
+     * @return the values whose alias contains the term, by attribute
+     */
+    private Map<SingularAttribute, List<Object>> matchingAliasedValues(String lowerCaseTerm) {
+        Map<SingularAttribute, List<Object>> matchingValues = new LinkedHashMap<>();
+        aliasedValues.forEach((attribute, values) -> {
+            List<Object> matching = values.stream()
+                                          .filter(value -> value.getLowerCaseAlias().contains(lowerCaseTerm))
+                                          .map(AliasedValue::getValue)
+                                          .collect(Collectors.toList());
+            if (!matching.isEmpty()) {
+                matchingValues.put(attribute, matching);
+            }
+        });
+        return matchingValues;
+    }
+
+    /**
+     * Without a case insensitive collation the column is compared in lower case, which rules out its index.
+     */
+    private Predicate stringPredicate(Root<T> root,
+                                      CriteriaBuilder cb,
+                                      SingularAttribute attribute,
+                                      QuickSearchMatchMode matchMode,
+                                      String lowerCaseTerm) {
+        Expression<String> column = root.get(attribute).as(String.class);
+        Expression<String> expression = caseInsensitiveCollation ? column : cb.lower(column);
+        switch (matchMode) {
+            case EXACT:
+                return cb.equal(expression, lowerCaseTerm);
+            case PREFIX:
+                return cb.like(expression, QuickSearchSpecBuilder.escapeLike(lowerCaseTerm) + "%", '|');
+            default:
+                return cb.like(expression, "%" + QuickSearchSpecBuilder.escapeLike(lowerCaseTerm) + "%", '|');
+        }
+    }
+
+    /**
+     * Compare the column itself to the matching values, so the predicate can use an index of the column. It is cast to
+     * a string only when the values are the string form of a differently typed attribute.
+     */
+    private Predicate aliasPredicate(Root<T> root, CriteriaBuilder cb, SingularAttribute attribute, List<Object> values) {
+        Object first = values.get(0);
+        if (first instanceof Enum && values.size() == first.getClass().getEnumConstants().length) {
+            // every constant matches
+            return cb.isNotNull(root.get(attribute));
+        }
+        Expression<?> expression = ClassUtils.isAssignable(first.getClass(), attribute.getJavaType(), true)
+            ? root.get(attribute)
+            : root.get(attribute).as(String.class);
+        return values.size() == 1 ? cb.equal(expression, first) : expression.in(values);
+    }
+
+    private List<Expression<String>> likeExpressions(Root<T> root, CriteriaBuilder cb) {
+        List<Expression<String>> expressions = new ArrayList<>();
+        // first we add as much zeroes as padLength is to the value
+        // then we take the substring from this padded string, e.g
+        // padLength is 5
+        // the value of cell is 12 --> we add 5 zeroes, 0000012, then we drop "12".length character, which is 2
+        // so it becomes 00012
+        // in case of 1234, it is 000001234, then we drop 4 chars, so 01234
+        // in case of 12345, it is 0000012345, then we drop 5 chars, so 12345
+
+        // jpa substr indexing starts from 1, that is why the "+1" is there
+        for (Pair<SingularAttribute, Integer> pair : paddedStringAttributes) {
+            SingularAttribute dbColumn = pair.getLeft();
+            Expression<String> concatenatedColumn = cb.concat(StringUtils.repeat('0', pair.getRight()),
+                                                              root.get(dbColumn).as(String.class));
+            expressions.add(cb.substring(concatenatedColumn, cb.sum(cb.length(root.get(dbColumn)), 1)));
+        }
+        for (Triple<SingularAttribute, String, SingularAttribute> triple : concatenatedAttributes) {
+            Expression<String> leftSide = cb.concat(root.get(triple.getLeft()).as(String.class), triple.getMiddle());
+            expressions.add(cb.concat(leftSide, root.get(triple.getRight()).as(String.class)));
+        }
+        for (Pair<SingularAttribute, String> pair : instantAttributes) {
+            String function = "LONDON".equalsIgnoreCase(pair.getRight()) ? "TO_CHAR_LONDON_TIME" : "TO_CHAR";
+            expressions.add(cb.function(function,
+                                        String.class,
+                                        root.get(pair.getLeft()).as(Instant.class),
+                                        cb.literal("DD/MM/YY HH24:MI")));
+        }
+        for (SingularAttribute attribute : dateAttributes) {
+            expressions.add(cb.function("TO_CHAR",
+                                        String.class,
+                                        root.get(attribute).as(Instant.class),
+                                        cb.literal("DD/MM/YYYY")));
+        }
+        return expressions;
+    }
+
+    /**
+     * Render the attributes of an entity the way the quick search predicates render them in the database, for the
+     * search text column of a {@link QuickSearchable} entity.
+     *
+     * @param entity the entity
+     * @return the normalized attributes, separated by {@link QuickSearchable#SEPARATOR}
+     */
+    public String toSearchText(T entity) {
+        List<String> values = new ArrayList<>();
+        stringAttributes.forEach(pair -> values.add(Objects.toString(valueOf(pair.getLeft(), entity), null)));
+        paddedStringAttributes.forEach(pair -> {
+            Object value = valueOf(pair.getLeft(), entity);
+            values.add(value != null ? StringUtils.leftPad(value.toString(), pair.getRight(), '0') : null);
+        });
+        aliasedValues.forEach((attribute, aliased) -> {
+            Object value = valueOf(attribute, entity);
+            aliased.stream()
+                   .filter(alias -> alias.matches(value))
+                   .forEach(alias -> values.add(alias.getAlias()));
+        });
+        concatenatedAttributes.forEach(triple -> {
+            Object left = valueOf(triple.getLeft(), entity);
+            Object right = valueOf(triple.getRight(), entity);
+            values.add(left != null && right != null ? left + triple.getMiddle() + right : null);
+        });
+        instantAttributes.forEach(pair -> values.add(
+            format(valueOf(pair.getLeft(), entity), INSTANT_FORMAT, "LONDON".equalsIgnoreCase(pair.getRight()) ? LONDON : ZoneOffset.UTC)));
+        dateAttributes.forEach(attribute -> values.add(format(valueOf(attribute, entity), DATE_FORMAT, ZoneOffset.UTC)));
+        String searchText = values.stream()
+                                  .filter(StringUtils::isNotEmpty)
+                                  .map(QuickSearchSpecBuilder::normalizeSearchText)
+                                  .collect(Collectors.joining(String.valueOf(QuickSearchable.SEPARATOR)));
+        return StringUtils.left(searchText, QuickSearchable.SEARCH_TEXT_MAX_LENGTH);
+    }
+
+    private static String format(Object value, DateTimeFormatter formatter, ZoneId zone) {
+        if (value instanceof Instant) {
+            return formatter.format(((Instant) value).atZone(zone));
+        } else if (value instanceof LocalDate) {
+            return formatter.format((LocalDate) value);
+        } else if (value instanceof Date) {
+            return formatter.format(((Date) value).toInstant().atZone(zone));
+        }
+        return value != null ? value.toString() : null;
+    }
+
+    private static Object valueOf(SingularAttribute attribute, Object entity) {
+        Member member = attribute.getJavaMember();
+        try {
+            if (member instanceof Field) {
+                Field field = (Field) member;
+                field.setAccessible(true);
+                return field.get(entity);
+            } else if (member instanceof Method) {
+                return ((Method) member).invoke(entity);
+            }
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Could not read " + attribute.getName() + " of " + entity.getClass(), e);
+        }
+        throw new IllegalStateException("Unsupported attribute " + attribute.getName() + " of " + entity.getClass());
+    }
+
+    /**
+     * A value of an attribute searched by its alias: {@code Boolean.TRUE} for a boolean attribute, the database value
+     * for a string or enum attribute.
+     */
+    static final class AliasedValue {
+
+        private final SingularAttribute attribute;
+        private final Object value;
+        private final String alias;
+        private final String lowerCaseAlias;
+
+        AliasedValue(SingularAttribute attribute, Object value, String alias) {
+            this.attribute = attribute;
+            this.value = value;
+            this.alias = alias;
+            this.lowerCaseAlias = alias.toLowerCase(Locale.ROOT);
+        }
+
+        SingularAttribute getAttribute() {
+            return attribute;
+        }
+
+        Object getValue() {
+            return value;
+        }
+
+        String getAlias() {
+            return alias;
+        }
+
+        String getLowerCaseAlias() {
+            return lowerCaseAlias;
+        }
+
+        /**
+         * @param attributeValue the value of the attribute of an entity
+         * @return whether it is this value, or its string form
+         */
+        boolean matches(Object attributeValue) {
+            return value instanceof String
+                ? value.equals(Objects.toString(attributeValue, null))
+                : value.equals(attributeValue);
+        }
+    }
+}
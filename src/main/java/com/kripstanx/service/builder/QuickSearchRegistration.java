@@ -0,0 +1,71 @@
+package com.kripstanx.service.builder;
+
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.function.Consumer;
+
+/**
+ * The quick search attributes of an entity type, registered once and shared by the quick search queries and the
+ * search text column of the entity, see {@link QuickSearchSpecBuilder#toSearchText(Object)}.
+ * <p>
+ * The attributes are compiled to a {@link QuickSearchPlan} on first use, the JPA metamodel is not populated before,
+ * and the plan is reused by every search.
+ */
+public final class QuickSearchRegistration<T> {
+
+    private final Class<T> entityClass;
+
+    private final Consumer<QuickSearchSpecBuilder<T>> attributes;
+
+    private volatile QuickSearchPlan<T> plan;
+
+    private QuickSearchRegistration(Class<T> entityClass, Consumer<QuickSearchSpecBuilder<T>> attributes) {
+        this.entityClass = entityClass;
+        this.attributes = attributes;
+    }
+
+    /**
+     * @param entityClass the entity type
+     * @param attributes  adds the quick search attributes to a builder
+     */
+    public static <T> QuickSearchRegistration<T> of(Class<T> entityClass, Consumer<QuickSearchSpecBuilder<T>> attributes) {
+        return new QuickSearchRegistration<>(entityClass, attributes);
+    }
+
+    public Class<T> getEntityClass() {
+        return entityClass;
+    }
+
+    /**
+     * @return a builder of the quick search, with the registered attributes
+     */
+    public QuickSearchSpecBuilder<T> builder(String quickSearchText) {
+        QuickSearchSpecBuilder<T> builder = new QuickSearchSpecBuilder<>(quickSearchText);
+        attributes.accept(builder);
+        return builder;
+    }
+
+    /**
+     * @return the compiled quick search of the registered attributes
+     */
+    public QuickSearchPlan<T> getPlan() {
+        QuickSearchPlan<T> compiled = plan;
+        if (compiled == null) {
+            compiled = builder(null).compile();
+            plan = compiled;
+        }
+        return compiled;
+    }
+
+    /**
+     * @param quickSearchText the searched text, URL encoded
+     * @return the specification of the entities matching the text, null for an empty text
+     */
+    public Specification<T> toSpecification(String quickSearchText) {
+        return getPlan().toSpecification(quickSearchText);
+    }
+
+    public String toSearchText(T entity) {
+        return getPlan().toSearchText(entity);
+    }
+}
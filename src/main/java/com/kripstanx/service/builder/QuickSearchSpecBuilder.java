@@ -1,6 +1,9 @@
 package com.kripstanx.service.builder;
 
+import com.kripstanx.domain.QuickSearchable;
 import com.kripstanx.domain.enumeration.AliasedEnum;
+import com.kripstanx.service.search.QuickSearchFanOut;
+import com.kripstanx.service.search.QuickSearchIndex;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.lang3.tuple.Triple;
@@ -11,39 +14,46 @@ import org.springframework.data.jpa.domain.Specification;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.Expression;
 import javax.persistence.criteria.Predicate;
-import javax.persistence.criteria.Root;
 import javax.persistence.metamodel.SingularAttribute;
-import java.io.UnsupportedEncodingException;
-import java.net.URLDecoder;
-import java.nio.charset.StandardCharsets;
-import java.time.Instant;
+import java.util.regex.Pattern;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * Builder implementation for creating Specification for quick search functionalities
  */
 public class QuickSearchSpecBuilder<T> {
 
+    private static final Pattern WHITESPACES = Pattern.compile("\\s+");
+
+    /**
+     * Registered for MySQL only, see {@link com.kripstanx.config.QuickSearchFunctionsContributor}.
+     */
+    public static final String FULL_TEXT_MATCH_FUNCTION = "quick_search_match";
+
     private final Logger log = LoggerFactory.getLogger(QuickSearchSpecBuilder.class);
 
-    private List<SingularAttribute> stringAttributes;
+    private List<Pair<SingularAttribute, QuickSearchMatchMode>> stringAttributes;
     private List<Pair<SingularAttribute, Integer>> paddedStringAttributes;
     private List<Triple<SingularAttribute, String, SingularAttribute>> concatenatedAttributes;
-    private List<AliasedBoolAttribute> boolAttributes;
-    private List<AliasedStringAttribute> aliasedStringAttributes;
-    private Map<SingularAttribute, String> instantAttributes;
+    private List<QuickSearchPlan.AliasedValue> aliasedValues;
+    private List<Pair<SingularAttribute, String>> instantAttributes;
     private List<SingularAttribute> dateAttributes;
     private Specification<T> userDefSpecification = null;
     private String quickSearchText;
+    private QuickSearchIndex quickSearchIndex;
+    private QuickSearchFanOut quickSearchFanOut;
+    private Class<T> entityClass;
+    private SingularAttribute<? super T, String> searchTextAttribute;
+    private boolean fullText;
+    private boolean multiTerm;
+    private boolean caseInsensitiveCollation;
 
     public QuickSearchSpecBuilder(String quickSearchText) {
         stringAttributes = new ArrayList<>();
-        boolAttributes = new ArrayList<>();
-        aliasedStringAttributes = new ArrayList<>();
+        aliasedValues = new ArrayList<>();
         concatenatedAttributes = new ArrayList<>();
         paddedStringAttributes = new ArrayList<>();
-        instantAttributes = new HashMap<>();
+        instantAttributes = new ArrayList<>();
         dateAttributes = new ArrayList<>();
         this.quickSearchText = quickSearchText;
     }
@@ -71,7 +81,19 @@ public class QuickSearchSpecBuilder<T> {
      * @return this
      */
     public QuickSearchSpecBuilder<T> addStringAttribute(SingularAttribute attribute) {
-        stringAttributes.add(attribute);
+        return addStringAttribute(attribute, QuickSearchMatchMode.CONTAINS);
+    }
+
+    /**
+     * Adding a string attribute matched with the given mode, e.g. {@link QuickSearchMatchMode#PREFIX} for a column
+     * whose index should be used
+     *
+     * @param attribute the attribute to be added
+     * @param matchMode how the searched text is matched against the attribute
+     * @return this
+     */
+    public QuickSearchSpecBuilder<T> addStringAttribute(SingularAttribute attribute, QuickSearchMatchMode matchMode) {
+        stringAttributes.add(Pair.of(attribute, matchMode));
         return this;
     }
 
@@ -82,7 +104,7 @@ public class QuickSearchSpecBuilder<T> {
      * @return this
      */
     public QuickSearchSpecBuilder<T> addInstantAttribute(SingularAttribute attribute, String timezone) {
-        instantAttributes.put(attribute, timezone);
+        instantAttributes.add(Pair.of(attribute, timezone));
         return this;
     }
 
@@ -106,20 +128,29 @@ public class QuickSearchSpecBuilder<T> {
      * @return this
      */
     public QuickSearchSpecBuilder<T> addAliasedBooleanAttribute(SingularAttribute attribute, String alias) {
-        boolAttributes.add(new AliasedBoolAttribute(attribute, alias));
+        aliasedValues.add(new QuickSearchPlan.AliasedValue(attribute, Boolean.TRUE, alias));
         return this;
     }
 
     public QuickSearchSpecBuilder<T> addAliasedStringAttribute(SingularAttribute attribute,
                                                                String valueInDb,
                                                                String aliasToUsedInsteadOfDbValue) {
-        aliasedStringAttributes.add(new AliasedStringAttribute(attribute, aliasToUsedInsteadOfDbValue, valueInDb));
+        aliasedValues.add(new QuickSearchPlan.AliasedValue(attribute, valueInDb, aliasToUsedInsteadOfDbValue));
         return this;
     }
 
+    /**
+     * Adding an enum attribute searched by the aliases of its values. The attribute is compared to the enum constants
+     * themselves, so the predicate does not depend on how the enum is mapped.
+     *
+     * @param attribute the attribute to be added
+     * @param values    the aliased values of the enum
+     * @return this
+     */
     public QuickSearchSpecBuilder<T> addAliasedEnumAttribute(SingularAttribute attribute,
                                                              AliasedEnum[] values) {
-        Arrays.asList(values).forEach(item -> addAliasedStringAttribute(attribute, item.toString(), item.getAlias()));
+        Arrays.asList(values).forEach(item -> aliasedValues.add(new QuickSearchPlan.AliasedValue(
+            attribute, item instanceof Enum ? item : item.toString(), item.getAlias())));
         return this;
     }
 
@@ -136,129 +167,107 @@ public class QuickSearchSpecBuilder<T> {
     }
 
     /**
-     * Building the specification based on given attributes and user defined specification
+     * Resolve the quick search with the n-gram index of the entity to an {@code id IN (...)} predicate, instead of
+     * the LIKE predicates of the attributes which scan the whole table. The LIKE predicates are still used when the
+     * index cannot resolve the text, so the attributes must match the ones of the index definition of the entity.
+     *
+     * @param quickSearchIndex the index
+     * @param entityClass      the searched entity type
+     * @return this
      */
-    public Specification<T> build() {
-        return createQuickSearchSpecification();
+    public QuickSearchSpecBuilder<T> useIndex(QuickSearchIndex quickSearchIndex, Class<T> entityClass) {
+        this.quickSearchIndex = quickSearchIndex;
+        this.entityClass = entityClass;
+        return this;
     }
 
-    private Specification<T> createQuickSearchSpecification() {
-        Specification<T> specification = Specification.where(null);
-        if (StringUtils.isNotEmpty(quickSearchText)) {
-            Specification<T> attrSpec = quickSearchSpecificationByAttributes();
-            return userDefSpecification == null ? attrSpec : Specification.where(attrSpec.or(userDefSpecification));
-        }
-
-        return specification;
+    /**
+     * Resolve the quick search to an {@code id IN (...)} predicate with one parallel id query per attribute predicate,
+     * when they can all use an index, see {@link QuickSearchFanOut}. Tried after the n-gram index.
+     *
+     * @param quickSearchFanOut the fan-out executor
+     * @param entityClass       the searched entity type
+     * @return this
+     */
+    public QuickSearchSpecBuilder<T> useFanOut(QuickSearchFanOut quickSearchFanOut, Class<T> entityClass) {
+        this.quickSearchFanOut = quickSearchFanOut;
+        this.entityClass = entityClass;
+        return this;
     }
 
-    private Specification<T> quickSearchSpecificationByAttributes() {
-        return (Specification<T>) (root, criteriaQuery, criteriaBuilder) -> {
-
-            List<Expression> expressions = new ArrayList<>();
-            expressions.addAll(createExpressionsFromStringAttributes(root));
-            expressions.addAll(createExpressionsFromPaddedStringAttributes(root, criteriaBuilder));
-            expressions.addAll(createExpressionsFromBoolAttributes(root, criteriaBuilder));
-            expressions.addAll(createExpressionsFromAliasedStringAttributes(root, criteriaBuilder));
-            expressions.addAll(createExpressionsFromConcatenatedAttributes(root, criteriaBuilder));
-            expressions.addAll(createExpressionsFromInstantAttributes(root, criteriaBuilder));
-            expressions.addAll(createExpressionsFromDateAttributes(root, criteriaBuilder));
-
-            List<Predicate> predicates;
-            predicates = expressions.stream()
-                                    .map(x -> toPredicate(createSafeLike(criteriaBuilder, x, quickSearchText)))
-                                    .collect(Collectors.toList());
-
-            return criteriaBuilder.or(predicates.toArray(new Predicate[predicates.size()]));
-        };
+    /**
+     * Search the search text column of a {@link QuickSearchable} entity with a single LIKE, or with the full-text
+     * function, instead of an expression per attribute. The column is rendered from the attributes of this builder
+     * by {@link #toSearchText(Object)}.
+     *
+     * @param searchTextAttribute the search text attribute
+     * @param fullText            whether the database has a full-text index on the column, MySQL only
+     * @return this
+     */
+    public QuickSearchSpecBuilder<T> useSearchTextColumn(SingularAttribute<? super T, String> searchTextAttribute,
+                                                         boolean fullText) {
+        this.searchTextAttribute = searchTextAttribute;
+        this.fullText = fullText;
+        return this;
     }
 
-    private Collection<? extends Expression> createExpressionsFromBoolAttributes(Root<T> root, CriteriaBuilder cb) {
-        return boolAttributes.stream()
-                             .map(attribute -> toExpression(createNewStringExpressionForTrueBooleanColumn(root,
-                                                                                                          cb,
-                                                                                                          attribute)))
-                             .collect(Collectors.toList());
+    /**
+     * Split the searched text on whitespaces and search every term: an entity matches if each term matches one of its
+     * attributes, e.g. "john smi" matches John Smith.
+     *
+     * @return this
+     */
+    public QuickSearchSpecBuilder<T> multiTerm() {
+        this.multiTerm = true;
+        return this;
     }
 
-    private Collection<? extends Expression> createExpressionsFromAliasedStringAttributes(Root<T> root,
-                                                                                          CriteriaBuilder cb) {
-        return aliasedStringAttributes.stream()
-                                      .map(attribute -> toExpression(createNewStringExpressionForStringAliasColumn(root,
-                                                                                                                   cb,
-                                                                                                                   attribute)))
-                                      .collect(Collectors.toList());
+    /**
+     * The string columns compare case insensitively, like with the default MySQL collations, so they are not wrapped
+     * in lower() and the prefix and exact matches can use their index.
+     *
+     * @return this
+     */
+    public QuickSearchSpecBuilder<T> useCaseInsensitiveCollation() {
+        this.caseInsensitiveCollation = true;
+        return this;
     }
 
-    private Collection<? extends Expression> createExpressionsFromConcatenatedAttributes(Root<T> root,
-                                                                                         CriteriaBuilder cb) {
-        List<Expression<String>> expressions = new ArrayList<>();
-        for (Triple<SingularAttribute, String, SingularAttribute> triple : concatenatedAttributes) {
-            Expression<String> leftSide = cb.concat(root.get(triple.getLeft())
-                                                        .as(String.class),
-                                                    triple.getMiddle());
-            expressions.add(toExpression(cb.concat(leftSide, root.get(triple.getRight()).as(String.class))));
-        }
-
-        return expressions;
+    /**
+     * Building the specification based on given attributes and user defined specification
+     */
+    public Specification<T> build() {
+        return createQuickSearchSpecification();
     }
 
-    private List<Expression> createExpressionsFromStringAttributes(Root<T> root) {
-        return stringAttributes.stream()
-                               .map(attribute -> root.get(attribute).as(String.class))
-                               .collect(Collectors.toList());
+    /**
+     * Compile the attributes of this builder to an immutable plan, which can be cached and searched with any text.
+     * The user defined specification is not part of it.
+     */
+    public QuickSearchPlan<T> compile() {
+        return new QuickSearchPlan<>(stringAttributes,
+                                     paddedStringAttributes,
+                                     concatenatedAttributes,
+                                     instantAttributes,
+                                     dateAttributes,
+                                     aliasedValues,
+                                     quickSearchIndex,
+                                     quickSearchFanOut,
+                                     entityClass,
+                                     searchTextAttribute,
+                                     fullText,
+                                     multiTerm,
+                                     caseInsensitiveCollation);
     }
 
-    private Collection<? extends Expression> createExpressionsFromPaddedStringAttributes(Root<T> root,
-                                                                                         CriteriaBuilder cb) {
-        // first we add as much zeroes as padLength is to the value
-        // then we take the substring from this padded string, e.g
-        // padLength is 5
-        // the value of cell is 12 --> we add 5 zeroes, 0000012, then we drop "12".length character, which is 2
-        // so it becomes 00012
-        // in case of 1234, it is 000001234, then we drop 4 chars, so 01234
-        // in case of 12345, it is 0000012345, then we drop 5 chars, so 12345
-
-        // jpa substr indexing starts from 1, that is why the "+1" is there
-        List<Expression<String>> expressions = new ArrayList<>();
-        for (Pair<SingularAttribute, Integer> pair : paddedStringAttributes) {
-            SingularAttribute dbColumn = pair.getLeft();
-            int padLength = pair.getRight();
-            Expression concatenatedColumn = cb.concat(StringUtils.repeat('0', padLength),
-                                                      root.get(dbColumn).as(String.class));
-            Expression paddedExpr = cb.substring(concatenatedColumn,
-                                                 cb.sum(cb.length(root.get(dbColumn)), 1)
-            );
-            expressions.add(toExpression(paddedExpr));
+    private Specification<T> createQuickSearchSpecification() {
+        Specification<T> specification = Specification.where(null);
+        if (StringUtils.isNotEmpty(quickSearchText)) {
+            Specification<T> attrSpec = compile().toSpecification(quickSearchText);
+            return userDefSpecification == null ? attrSpec : Specification.where(attrSpec.or(userDefSpecification));
         }
-        return expressions;
-    }
 
-    private List<Expression> createExpressionsFromInstantAttributes(Root<T> root, CriteriaBuilder cb) {
-        return instantAttributes.entrySet().stream()
-                                .map(entry -> {
-                                    if (entry.getValue().equalsIgnoreCase("LONDON")) {
-                                        return cb.function("TO_CHAR_LONDON_TIME",
-                                                           String.class,
-                                                           root.get(entry.getKey()).as(Instant.class),
-                                                           cb.literal("DD/MM/YY HH24:MI"));
-                                    } else {
-                                        return cb.function("TO_CHAR",
-                                                           String.class,
-                                                           root.get(entry.getKey()).as(Instant.class),
-                                                           cb.literal("DD/MM/YY HH24:MI"));
-                                    }
-                                })
-                                .collect(Collectors.toList());
-    }
-
-    private List<Expression> createExpressionsFromDateAttributes(Root<T> root, CriteriaBuilder cb) {
-        return dateAttributes.stream()
-                                .map(attribute -> cb.function("TO_CHAR",
-                                                          String.class,
-                                                          root.get(attribute).as(Instant.class),
-                                                          cb.literal("DD/MM/YYYY")))
-                                .collect(Collectors.toList());
+        return specification;
     }
 
     /**
@@ -289,85 +298,33 @@ public class QuickSearchSpecBuilder<T> {
                        cb.literal('|'));
     }
 
-    private Predicate toPredicate(Predicate predicate) {
-        return predicate;
-    }
-
-    private Expression<String> toExpression(Expression<String> expression) {
-        return expression;
-    }
-
-    private Expression<String> createNewStringExpressionForTrueBooleanColumn(final Root<T> root,
-                                                                             CriteriaBuilder cb,
-                                                                             final AliasedBoolAttribute aliasedBoolAttribute) {
-
-        Expression<Boolean> booleanExpression = root.get(aliasedBoolAttribute.getAttribute()).as(Boolean.class);
-        return cb.selectCase()
-                 .when(cb.equal(booleanExpression, true), aliasedBoolAttribute.getAlias()).otherwise("")
-                 .as(String.class);
+    private static String correctString(String str) {
+        return QuickSearchTextNormalizer.toLikeTerm(str);
     }
 
-    private Expression<String> createNewStringExpressionForStringAliasColumn(final Root<T> root,
-                                                                             CriteriaBuilder cb,
-                                                                             final AliasedStringAttribute aliasedAttr) {
-
-        Expression<String> stringExpr = root.get(aliasedAttr.getAttribute()).as(String.class);
-        return cb.selectCase()
-                 .when(cb.equal(stringExpr, aliasedAttr.getDbValue()), aliasedAttr.getAlias()).otherwise("")
-                 .as(String.class);
+    static String escapeLike(String str) {
+        return QuickSearchTextNormalizer.escapeLike(str);
     }
 
-    private class AliasedStringAttribute {
-
-        final private SingularAttribute<T, String> attribute;
-        final private String alias;
-        final private String dbValue;
-
-        public AliasedStringAttribute(SingularAttribute<T, String> attribute, String alias, String dbValue) {
-            this.attribute = attribute;
-            this.alias = alias;
-            this.dbValue = dbValue;
-        }
-
-        public SingularAttribute<T, String> getAttribute() {
-            return attribute;
-        }
-
-        public String getAlias() {
-            return alias;
-        }
-
-        public String getDbValue() {
-            return dbValue;
-        }
+    /**
+     * Normalize a search text or a searched text: lower case, with single spaces.
+     */
+    public static String normalizeSearchText(String text) {
+        return WHITESPACES.matcher(text.trim()).replaceAll(" ").toLowerCase(Locale.ROOT);
     }
 
-    private class AliasedBoolAttribute {
-
-        SingularAttribute<T, Boolean> attribute;
-        String alias;
-
-        public AliasedBoolAttribute(SingularAttribute<T, Boolean> attribute, String alias) {
-            this.attribute = attribute;
-            this.alias = alias;
-        }
-
-        public SingularAttribute<T, Boolean> getAttribute() {
-            return attribute;
-        }
-
-        public String getAlias() {
-            return alias;
-        }
+    /**
+     * Render the attributes of an entity the way the quick search predicates render them in the database, for the
+     * search text column of a {@link QuickSearchable} entity. The user defined specification is not part of it.
+     *
+     * @param entity the entity
+     * @return the normalized attributes, separated by {@link QuickSearchable#SEPARATOR}
+     */
+    public String toSearchText(T entity) {
+        return compile().toSearchText(entity);
     }
 
-    private static String correctString(String str) {
-        String decodedParam = null;
-        try {
-            decodedParam = URLDecoder.decode(str, StandardCharsets.UTF_8.name());
-        } catch (UnsupportedEncodingException e) {
-            new RuntimeException(e);
-        }
-        return decodedParam.toLowerCase().replaceAll("%", "|%").replaceAll("_", "|_");
+    static String decode(String str) {
+        return QuickSearchTextNormalizer.decode(str);
     }
 }
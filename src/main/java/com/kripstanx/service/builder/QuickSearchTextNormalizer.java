@@ -0,0 +1,190 @@
+package com.kripstanx.service.builder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Turns the URL encoded quick search text into a LIKE term in one pass: decoded like {@link java.net.URLDecoder} with
+ * UTF-8, lower cased like {@code toLowerCase(Locale.ROOT)}, and with the LIKE wildcards and the {@code |} escape
+ * character escaped.
+ * <p>
+ * Runs on every quick search keystroke: a text without escapes, wildcards or upper case letters is returned as is, and
+ * the other ones are built in a single buffer. The rare characters whose lower case depends on their context fall
+ * back to {@link String#toLowerCase(Locale)}.
+ */
+public final class QuickSearchTextNormalizer {
+
+    public static final char LIKE_ESCAPE = '|';
+
+    /**
+     * Lower cases to two chars.
+     */
+    private static final char DOTTED_CAPITAL_I = '\u0130';
+
+    /**
+     * Lower cases to a final sigma at the end of a word.
+     */
+    private static final char CAPITAL_SIGMA = '\u03a3';
+
+    private QuickSearchTextNormalizer() {
+    }
+
+    /**
+     * @param encoded the URL encoded search text
+     * @return the decoded, lower case and escaped LIKE term
+     * @throws IllegalArgumentException if an escape sequence is malformed
+     */
+    public static String toLikeTerm(String encoded) {
+        if (!needsWork(encoded)) {
+            return encoded;
+        }
+        StringBuilder term = new StringBuilder(encoded.length() + 8);
+        int length = encoded.length();
+        int i = 0;
+        while (i < length) {
+            char c = encoded.charAt(i);
+            if (c == '%') {
+                int end = escapesEnd(encoded, i);
+                String decoded = decodeEscapes(encoded, i, end);
+                for (int j = 0; j < decoded.length(); j++) {
+                    if (!appendLowerCaseEscaped(term, decoded.charAt(j))) {
+                        return slowLikeTerm(encoded);
+                    }
+                }
+                i = end;
+            } else {
+                if (!appendLowerCaseEscaped(term, c == '+' ? ' ' : c)) {
+                    return slowLikeTerm(encoded);
+                }
+                i++;
+            }
+        }
+        return term.toString();
+    }
+
+    /**
+     * @param encoded the URL encoded search text
+     * @return the decoded text, as is if nothing is encoded
+     * @throws IllegalArgumentException if an escape sequence is malformed
+     */
+    public static String decode(String encoded) {
+        if (encoded.indexOf('%') < 0 && encoded.indexOf('+') < 0) {
+            return encoded;
+        }
+        StringBuilder decoded = new StringBuilder(encoded.length());
+        int length = encoded.length();
+        int i = 0;
+        while (i < length) {
+            char c = encoded.charAt(i);
+            if (c == '%') {
+                int end = escapesEnd(encoded, i);
+                decoded.append(decodeEscapes(encoded, i, end));
+                i = end;
+            } else {
+                decoded.append(c == '+' ? ' ' : c);
+                i++;
+            }
+        }
+        return decoded.toString();
+    }
+
+    /**
+     * @param text the LIKE term
+     * @return the term with {@code %}, {@code _} and the escape character escaped
+     */
+    public static String escapeLike(String text) {
+        int length = text.length();
+        int i = 0;
+        while (i < length && !isLikeSpecial(text.charAt(i))) {
+            i++;
+        }
+        if (i == length) {
+            return text;
+        }
+        StringBuilder escaped = new StringBuilder(length + 8).append(text, 0, i);
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            if (isLikeSpecial(c)) {
+                escaped.append(LIKE_ESCAPE);
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * @return false for a text which is already a lower case LIKE term, without escapes
+     */
+    private static boolean needsWork(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 'A' && c <= 'Z' || isLikeSpecial(c) || c == '+' || c >= 0x80) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isLikeSpecial(char c) {
+        return c == '%' || c == '_' || c == LIKE_ESCAPE;
+    }
+
+    /**
+     * Lower case a char, unless it is a surrogate or a context dependent one.
+     *
+     * @return false if the char must go through {@link String#toLowerCase(Locale)}
+     */
+    private static boolean appendLowerCaseEscaped(StringBuilder term, char c) {
+        if (c < 0x80) {
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            } else if (isLikeSpecial(c)) {
+                term.append(LIKE_ESCAPE);
+            }
+            term.append(c);
+            return true;
+        }
+        if (Character.isSurrogate(c) || c == DOTTED_CAPITAL_I || c == CAPITAL_SIGMA) {
+            return false;
+        }
+        term.append(Character.toLowerCase(c));
+        return true;
+    }
+
+    private static String slowLikeTerm(String encoded) {
+        return escapeLike(decode(encoded).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @return the end of the consecutive {@code %XX} escapes starting at the given index
+     */
+    private static int escapesEnd(String encoded, int start) {
+        int i = start;
+        while (i < encoded.length() && encoded.charAt(i) == '%') {
+            if (i + 2 >= encoded.length()) {
+                throw new IllegalArgumentException("Incomplete trailing escape (%) pattern");
+            }
+            i += 3;
+        }
+        return i;
+    }
+
+    /**
+     * Consecutive escapes are decoded together, they may be the bytes of a multi-byte char.
+     */
+    private static String decodeEscapes(String encoded, int start, int end) {
+        byte[] bytes = new byte[(end - start) / 3];
+        for (int i = start, b = 0; i < end; i += 3, b++) {
+            int high = Character.digit(encoded.charAt(i + 1), 16);
+            int low = Character.digit(encoded.charAt(i + 2), 16);
+            if (high < 0 || low < 0) {
+                throw new IllegalArgumentException("Illegal hex characters in escape (%) pattern");
+            }
+            bytes[b] = (byte) ((high << 4) + low);
+        }
+        if (bytes.length == 1 && bytes[0] >= 0) {
+            return String.valueOf((char) bytes[0]);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,95 @@
+package com.kripstanx.service.cluster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Base class of the buses: published events are queued and sent in batches on {@link #flush()}.
+ */
+public abstract class BatchingInvalidationEventBus implements InvalidationEventBus {
+
+    private final Logger log = LoggerFactory.getLogger(BatchingInvalidationEventBus.class);
+
+    private final Queue<InvalidationEvent> pending = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    private final List<Consumer<List<InvalidationEvent>>> subscribers = new CopyOnWriteArrayList<>();
+
+    private final int batchSize;
+
+    private final int maxPending;
+
+    protected BatchingInvalidationEventBus(int batchSize, int maxPending) {
+        this.batchSize = batchSize;
+        this.maxPending = maxPending;
+    }
+
+    @Override
+    public void publish(InvalidationEvent event) {
+        if (pendingCount.incrementAndGet() > maxPending) {
+            pendingCount.decrementAndGet();
+            log.error("Too many pending invalidation events, dropping {}", event);
+            return;
+        }
+        pending.add(event);
+    }
+
+    @Override
+    public void subscribe(Consumer<List<InvalidationEvent>> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    @Override
+    public synchronized void flush() {
+        List<InvalidationEvent> batch = new ArrayList<>(batchSize);
+        InvalidationEvent event;
+        while ((event = pending.poll()) != null) {
+            pendingCount.decrementAndGet();
+            batch.add(event);
+            if (batch.size() == batchSize) {
+                sendOrRequeue(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            sendOrRequeue(batch);
+        }
+    }
+
+    private void sendOrRequeue(List<InvalidationEvent> batch) {
+        try {
+            send(batch);
+        } catch (RuntimeException e) {
+            log.warn("Could not send {} invalidation events, retrying on next flush: {}", batch.size(), e.getMessage());
+            batch.forEach(this::publish);
+            throw e;
+        }
+    }
+
+    /**
+     * Send a batch of events to every node.
+     */
+    protected abstract void send(List<InvalidationEvent> batch);
+
+    /**
+     * Hand over a batch of received events to the subscribers.
+     */
+    protected void deliver(List<InvalidationEvent> batch) {
+        for (Consumer<List<InvalidationEvent>> subscriber : subscribers) {
+            try {
+                subscriber.accept(batch);
+            } catch (RuntimeException e) {
+                log.error("Invalidation subscriber failed on {} events", batch.size(), e);
+            }
+        }
+    }
+}
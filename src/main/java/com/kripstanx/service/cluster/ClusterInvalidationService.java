@@ -0,0 +1,182 @@
+package com.kripstanx.service.cluster;
+
+import com.kripstanx.config.ApplicationProperties;
+import com.kripstanx.domain.User;
+import com.kripstanx.repository.UserRepository;
+import com.kripstanx.security.SessionRevocationList;
+import com.kripstanx.security.SessionTokenRegistry;
+import com.kripstanx.service.cluster.InvalidationEvent.Type;
+import com.kripstanx.service.search.QuickSearchIndexLoader;
+import com.kripstanx.service.util.TransactionUtil;
+import org.hibernate.SessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Keeps the per node session and user state consistent across the cluster.
+ * <p>
+ * Changes made on this node are published once their transaction has committed, and applied locally by the caller.
+ * Changes received from the other nodes are applied in batches: the cached user, its second-level cache entries and
+ * session tokens are evicted, so they are reloaded from the database on the next request, revocations are added
+ * to the revocation list, and the changed users are reloaded into the quick search index.
+ */
+@Service
+public class ClusterInvalidationService {
+
+    private static final String USER_AUTHORITIES_ROLE = User.class.getName() + ".authorities";
+
+    private final Logger log = LoggerFactory.getLogger(ClusterInvalidationService.class);
+
+    private final InvalidationEventBus invalidationEventBus;
+
+    private final SessionTokenRegistry sessionTokenRegistry;
+
+    private final SessionRevocationList sessionRevocationList;
+
+    private final CacheManager cacheManager;
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    private final QuickSearchIndexLoader quickSearchIndexLoader;
+
+    private final String nodeId;
+
+    public ClusterInvalidationService(InvalidationEventBus invalidationEventBus,
+                                      SessionTokenRegistry sessionTokenRegistry,
+                                      SessionRevocationList sessionRevocationList,
+                                      CacheManager cacheManager,
+                                      EntityManagerFactory entityManagerFactory,
+                                      QuickSearchIndexLoader quickSearchIndexLoader,
+                                      ApplicationProperties applicationProperties) {
+        this.invalidationEventBus = invalidationEventBus;
+        this.sessionTokenRegistry = sessionTokenRegistry;
+        this.sessionRevocationList = sessionRevocationList;
+        this.cacheManager = cacheManager;
+        this.entityManagerFactory = entityManagerFactory;
+        this.quickSearchIndexLoader = quickSearchIndexLoader;
+        this.nodeId = getNodeId(applicationProperties);
+    }
+
+    /**
+     * @return the configured node id, or a random one if none is configured
+     */
+    public static String getNodeId(ApplicationProperties applicationProperties) {
+        String nodeId = applicationProperties.getCluster().getInvalidation().getNodeId();
+        return nodeId != null ? nodeId : NodeIdHolder.RANDOM_NODE_ID;
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        invalidationEventBus.subscribe(this::apply);
+    }
+
+    /**
+     * The session tokens of the user have been changed on this node.
+     */
+    public void sessionChanged(Long userId, String username) {
+        publish(Type.SESSION_CHANGED, userId, username, null);
+    }
+
+    /**
+     * The sessions of the user have been revoked on this node.
+     */
+    public void sessionRevoked(Long userId, String username) {
+        publish(Type.SESSION_REVOKED, userId, username, null);
+    }
+
+    /**
+     * The user has been changed on this node.
+     */
+    public void userChanged(Long userId, String username, String email) {
+        publish(Type.USER_CHANGED, userId, username, email);
+    }
+
+    private void publish(Type type, Long userId, String username, String email) {
+        if (username == null) {
+            return;
+        }
+        TransactionUtil.runAfterCommit(() -> invalidationEventBus.publish(
+            new InvalidationEvent(type, userId, username, email, nodeId, System.currentTimeMillis())));
+    }
+
+    @Scheduled(fixedDelayString = "${application.cluster.invalidation.flush-interval-ms:200}")
+    public void flush() {
+        try {
+            invalidationEventBus.flush();
+        } catch (RuntimeException e) {
+            // the events are kept and sent on the next flush
+            log.debug("Invalidation events not sent: {}", e.getMessage());
+        }
+    }
+
+    void apply(List<InvalidationEvent> events) {
+        int applied = 0;
+        Cache usersByUsername = cacheManager.getCache(UserRepository.USERS_BY_USERNAME_CACHE);
+        Cache usersByEmail = cacheManager.getCache(UserRepository.USERS_BY_EMAIL_CACHE);
+        Set<Long> changedUserIds = new HashSet<>();
+        for (InvalidationEvent event : events) {
+            if (nodeId.equals(event.getOrigin()) || event.getType() == null || event.getUsername() == null) {
+                continue;
+            }
+            if (event.getUserId() != null) {
+                // the user row has changed, the second-level cache of this node must not serve it any longer
+                evictCachedUser(event.getUserId());
+            }
+            switch (event.getType()) {
+                case SESSION_CHANGED:
+                    sessionTokenRegistry.evict(event.getUsername());
+                    break;
+                case SESSION_REVOKED:
+                    sessionTokenRegistry.evict(event.getUsername());
+                    sessionRevocationList.revoke(event.getUsername(), Instant.ofEpochMilli(event.getTimestamp()));
+                    break;
+                case USER_CHANGED:
+                    if (usersByUsername != null) {
+                        usersByUsername.evict(event.getUsername());
+                    }
+                    if (usersByEmail != null && event.getEmail() != null) {
+                        usersByEmail.evict(event.getEmail());
+                    }
+                    sessionTokenRegistry.evict(event.getUsername());
+                    if (event.getUserId() != null) {
+                        changedUserIds.add(event.getUserId());
+                    }
+                    break;
+                default:
+                    continue;
+            }
+            applied++;
+        }
+        if (applied > 0) {
+            log.debug("Applied {} invalidation events from other nodes", applied);
+        }
+        try {
+            quickSearchIndexLoader.reload(User.class, changedUserIds);
+        } catch (RuntimeException e) {
+            // picked up by the next rebuild
+            log.warn("Could not reload {} users into the quick search index: {}", changedUserIds.size(), e.getMessage());
+        }
+    }
+
+    private void evictCachedUser(Long userId) {
+        entityManagerFactory.getCache().evict(User.class, userId);
+        entityManagerFactory.unwrap(SessionFactory.class).getCache().evictCollectionData(USER_AUTHORITIES_ROLE, userId);
+    }
+
+    private static final class NodeIdHolder {
+
+        private static final String RANDOM_NODE_ID = UUID.randomUUID().toString();
+    }
+}
@@ -0,0 +1,118 @@
+package com.kripstanx.service.cluster;
+
+import java.io.Serializable;
+
+/**
+ * Invalidation of the per node state of a user, broadcast to every node of the cluster.
+ */
+public class InvalidationEvent implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Type {
+        /**
+         * The session tokens of the user have changed.
+         */
+        SESSION_CHANGED,
+        /**
+         * The sessions of the user have been revoked (logout, lock or deletion).
+         */
+        SESSION_REVOKED,
+        /**
+         * The user has been changed, the cached user must be evicted.
+         */
+        USER_CHANGED,
+    }
+
+    private Type type;
+
+    private Long userId;
+
+    private String username;
+
+    private String email;
+
+    private String origin;
+
+    private long timestamp;
+
+    public InvalidationEvent() {
+    }
+
+    public InvalidationEvent(Type type, Long userId, String username, String email, String origin, long timestamp) {
+        this.type = type;
+        this.userId = userId;
+        this.username = username;
+        this.email = email;
+        this.origin = origin;
+        this.timestamp = timestamp;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    /**
+     * @return the id of the user, evicted from the second-level cache, null if unknown
+     */
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public void setEmail(String email) {
+        this.email = email;
+    }
+
+    /**
+     * @return the id of the node which published the event
+     */
+    public String getOrigin() {
+        return origin;
+    }
+
+    public void setOrigin(String origin) {
+        this.origin = origin;
+    }
+
+    /**
+     * @return the time of the invalidation, in epoch milliseconds
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return "InvalidationEvent{" +
+            "type=" + type +
+            ", userId=" + userId +
+            ", username='" + username + '\'' +
+            ", origin='" + origin + '\'' +
+            ", timestamp=" + timestamp +
+            '}';
+    }
+}
@@ -0,0 +1,22 @@
+package com.kripstanx.service.cluster;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Broadcasts {@link InvalidationEvent}s to every node of the cluster.
+ * <p>
+ * Events are published one by one and delivered to the subscribers in batches. Subscribers also receive the events
+ * published by their own node and are expected to skip them by {@link InvalidationEvent#getOrigin()}.
+ */
+public interface InvalidationEventBus {
+
+    void publish(InvalidationEvent event);
+
+    void subscribe(Consumer<List<InvalidationEvent>> subscriber);
+
+    /**
+     * Send the pending events.
+     */
+    void flush();
+}
@@ -0,0 +1,19 @@
+package com.kripstanx.service.cluster;
+
+import java.util.List;
+
+/**
+ * In-memory bus, delivering the events to the subscribers of the same JVM. Used on a single node and in tests, where
+ * several subscribers with different node ids stand in for the nodes of a cluster.
+ */
+public class LoopbackInvalidationEventBus extends BatchingInvalidationEventBus {
+
+    public LoopbackInvalidationEventBus(int batchSize, int maxPending) {
+        super(batchSize, maxPending);
+    }
+
+    @Override
+    protected void send(List<InvalidationEvent> batch) {
+        deliver(batch);
+    }
+}
@@ -0,0 +1,222 @@
+package com.kripstanx.service.cluster;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.CreateQueueRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.QueueAttributeName;
+import com.amazonaws.services.sqs.model.QueueDoesNotExistException;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Bus backed by Amazon SQS: every node creates its own queue at startup and sends each batch of events to the queues
+ * of the other nodes, found by the common queue name prefix.
+ * <p>
+ * A batch is sent as one message holding a JSON array of events. The queue of a node is deleted when it stops, and
+ * messages are only retained for a few minutes, so a node that died without cleaning up does not pile them up.
+ * <p>
+ * Every message carries the queue of its sender, so a node learns about a new peer from its first message: a starting
+ * node announces itself with an empty batch. The peers are listed again periodically, and whenever a send fails.
+ */
+public class SqsInvalidationEventBus extends BatchingInvalidationEventBus {
+
+    private static final TypeReference<List<InvalidationEvent>> EVENT_LIST = new TypeReference<List<InvalidationEvent>>() {
+    };
+
+    private static final int RECEIVE_WAIT_SECONDS = 20;
+
+    private static final int MAX_RECEIVED_MESSAGES = 10;
+
+    private static final long PEER_QUEUES_REFRESH_MILLIS = 60_000;
+
+    private static final String SENDER_ATTRIBUTE = "sender";
+
+    private static final String EMPTY_BATCH = "[]";
+
+    private final Logger log = LoggerFactory.getLogger(SqsInvalidationEventBus.class);
+
+    private final AmazonSQS sqs;
+
+    private final ObjectMapper objectMapper;
+
+    private final String queueNamePrefix;
+
+    private final String queueName;
+
+    private final int messageRetentionSeconds;
+
+    private volatile String queueUrl;
+
+    private volatile List<String> peerQueueUrls = new ArrayList<>();
+
+    private volatile long peerQueueUrlsLoadedAt;
+
+    private volatile boolean running;
+
+    private Thread receiver;
+
+    public SqsInvalidationEventBus(AmazonSQS sqs, ObjectMapper objectMapper, String queueNamePrefix, String nodeId,
+                                   int messageRetentionSeconds, int batchSize, int maxPending) {
+        super(batchSize, maxPending);
+        this.sqs = sqs;
+        this.objectMapper = objectMapper;
+        this.queueNamePrefix = queueNamePrefix;
+        this.queueName = queueNamePrefix + nodeId;
+        this.messageRetentionSeconds = messageRetentionSeconds;
+    }
+
+    public void start() {
+        CreateQueueRequest request = new CreateQueueRequest().withQueueName(queueName)
+            .addAttributesEntry(QueueAttributeName.MessageRetentionPeriod.toString(),
+                                String.valueOf(messageRetentionSeconds))
+            .addAttributesEntry(QueueAttributeName.ReceiveMessageWaitTimeSeconds.toString(),
+                                String.valueOf(RECEIVE_WAIT_SECONDS));
+        queueUrl = sqs.createQueue(request).getQueueUrl();
+        log.info("Receiving invalidation events on {}", queueUrl);
+        try {
+            sendToPeers(EMPTY_BATCH);
+        } catch (RuntimeException e) {
+            log.warn("Could not announce queue {} to the other nodes: {}", queueUrl, e.getMessage());
+        }
+        running = true;
+        receiver = new Thread(this::receive, "invalidation-event-receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    public void stop() {
+        running = false;
+        if (receiver != null) {
+            receiver.interrupt();
+        }
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("Could not send the pending invalidation events: {}", e.getMessage());
+        }
+        try {
+            if (queueUrl != null) {
+                sqs.deleteQueue(queueUrl);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not delete queue {}: {}", queueUrl, e.getMessage());
+        } finally {
+            sqs.shutdown();
+        }
+    }
+
+    @Override
+    protected void send(List<InvalidationEvent> batch) {
+        String body;
+        try {
+            body = objectMapper.writeValueAsString(batch);
+        } catch (JsonProcessingException e) {
+            log.error("Could not serialize {} invalidation events", batch.size(), e);
+            return;
+        }
+        sendToPeers(body);
+    }
+
+    private void sendToPeers(String body) {
+        for (String peerQueueUrl : getPeerQueueUrls()) {
+            SendMessageRequest request = new SendMessageRequest(peerQueueUrl, body)
+                .addMessageAttributesEntry(SENDER_ATTRIBUTE, new MessageAttributeValue().withDataType("String")
+                                                                                         .withStringValue(queueUrl));
+            try {
+                sqs.sendMessage(request);
+            } catch (QueueDoesNotExistException e) {
+                // the peer has stopped
+                removePeer(peerQueueUrl);
+            } catch (RuntimeException e) {
+                peerQueueUrlsLoadedAt = 0;
+                throw e;
+            }
+        }
+    }
+
+    private List<String> getPeerQueueUrls() {
+        long now = System.currentTimeMillis();
+        if (now - peerQueueUrlsLoadedAt > PEER_QUEUES_REFRESH_MILLIS) {
+            List<String> listed = sqs.listQueues(queueNamePrefix).getQueueUrls().stream()
+                .filter(url -> !url.equals(queueUrl))
+                .collect(Collectors.toList());
+            synchronized (this) {
+                peerQueueUrls = listed;
+                peerQueueUrlsLoadedAt = now;
+            }
+        }
+        return peerQueueUrls;
+    }
+
+    private synchronized void addPeer(String peerQueueUrl) {
+        if (!peerQueueUrl.equals(queueUrl) && !peerQueueUrls.contains(peerQueueUrl)) {
+            List<String> urls = new ArrayList<>(peerQueueUrls);
+            urls.add(peerQueueUrl);
+            peerQueueUrls = urls;
+            log.info("New node, sending invalidation events to {}", peerQueueUrl);
+        }
+    }
+
+    private synchronized void removePeer(String peerQueueUrl) {
+        List<String> urls = new ArrayList<>(peerQueueUrls);
+        urls.remove(peerQueueUrl);
+        peerQueueUrls = urls;
+    }
+
+    private void receive() {
+        ReceiveMessageRequest request = new ReceiveMessageRequest(queueUrl)
+            .withMaxNumberOfMessages(MAX_RECEIVED_MESSAGES)
+            .withWaitTimeSeconds(RECEIVE_WAIT_SECONDS)
+            .withMessageAttributeNames(SENDER_ATTRIBUTE);
+        while (running) {
+            try {
+                List<Message> messages = sqs.receiveMessage(request).getMessages();
+                if (messages.isEmpty()) {
+                    continue;
+                }
+                List<InvalidationEvent> events = new ArrayList<>();
+                List<DeleteMessageBatchRequestEntry> entries = new ArrayList<>(messages.size());
+                for (Message message : messages) {
+                    MessageAttributeValue sender = message.getMessageAttributes().get(SENDER_ATTRIBUTE);
+                    if (sender != null && sender.getStringValue() != null) {
+                        addPeer(sender.getStringValue());
+                    }
+                    try {
+                        events.addAll(objectMapper.readValue(message.getBody(), EVENT_LIST));
+                    } catch (IOException e) {
+                        log.error("Skipping malformed invalidation message {}", message.getMessageId(), e);
+                    }
+                    entries.add(new DeleteMessageBatchRequestEntry(message.getMessageId(), message.getReceiptHandle()));
+                }
+                deliver(events);
+                sqs.deleteMessageBatch(queueUrl, entries);
+            } catch (RuntimeException e) {
+                if (running) {
+                    log.warn("Could not receive invalidation events: {}", e.getMessage());
+                    pause();
+                }
+            }
+        }
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
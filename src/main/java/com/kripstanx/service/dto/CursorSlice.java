@@ -0,0 +1,72 @@
+package com.kripstanx.service.dto;
+
+import com.kripstanx.service.util.KeysetCursor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * A slice of keyset pagination, with the continuation token of the next slice and optionally an approximate total
+ * from the table statistics instead of an exact count.
+ */
+public class CursorSlice<T> extends SliceImpl<T> {
+
+    public static final int MAX_SIZE = 1000;
+
+    private final String nextCursor;
+
+    private final Long approximateTotal;
+
+    public CursorSlice(List<T> content, int size, String nextCursor, Long approximateTotal) {
+        super(content, PageRequest.of(0, size), nextCursor != null);
+        this.nextCursor = nextCursor;
+        this.approximateTotal = approximateTotal;
+    }
+
+    /**
+     * @param size the requested slice size
+     * @return the size
+     * @throws IllegalArgumentException if the size is not between 1 and {@link #MAX_SIZE}
+     */
+    public static int checkSize(int size) {
+        if (size < 1 || size > MAX_SIZE) {
+            throw new IllegalArgumentException("Invalid slice size: " + size + ", it must be between 1 and " + MAX_SIZE);
+        }
+        return size;
+    }
+
+    /**
+     * Build the slice from the rows fetched with a limit of {@code size + 1}, the extra row only tells that there is
+     * a next slice.
+     *
+     * @param rows   at most {@code size + 1} rows, in cursor order
+     * @param size   the requested slice size
+     * @param cursor the cursor of a row
+     * @param mapper the mapping of the rows to the content
+     * @throws IllegalArgumentException if the size is invalid, see {@link #checkSize(int)}
+     */
+    public static <R, T> CursorSlice<T> of(List<R> rows, int size, Function<R, KeysetCursor> cursor,
+                                           Function<R, T> mapper, Long approximateTotal) {
+        checkSize(size);
+        boolean hasNext = rows.size() > size;
+        List<R> content = hasNext ? rows.subList(0, size) : rows;
+        String nextCursor = hasNext ? cursor.apply(content.get(size - 1)).encode() : null;
+        return new CursorSlice<>(content.stream().map(mapper).collect(Collectors.toList()),
+                                 size, nextCursor, approximateTotal);
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * @return the approximate number of rows of the whole listing, or null if it was not requested or is not
+     * available
+     */
+    public Long getApproximateTotal() {
+        return approximateTotal;
+    }
+}
@@ -0,0 +1,42 @@
+package com.kripstanx.service.search;
+
+import java.util.Locale;
+
+/**
+ * The formats of the quick search exports.
+ */
+public enum ExportFormat {
+
+    CSV("text/csv", "csv"),
+
+    /**
+     * One JSON object per line.
+     */
+    NDJSON("application/x-ndjson", "ndjson");
+
+    private final String contentType;
+
+    private final String extension;
+
+    ExportFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+
+    /**
+     * @param name the name of the format, in any case
+     * @return the format
+     * @throws IllegalArgumentException if there is no format of the name
+     */
+    public static ExportFormat of(String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+}
@@ -0,0 +1,189 @@
+package com.kripstanx.service.search;
+
+import com.kripstanx.domain.QuickSearchable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Trigram index of the quick search texts of one entity type, resolving a substring or an attribute prefix search to
+ * the matching ids.
+ * <p>
+ * The candidates sharing every trigram of the searched text are checked against their text, so the result is exact.
+ * Texts shorter than a trigram cannot be resolved. Reads are lock free, writes are serialized.
+ */
+public class NGramIndex {
+
+    static final int N = 3;
+
+    /**
+     * Separates the attributes of a text, no trigram spans two attributes.
+     */
+    static final char SEPARATOR = QuickSearchable.SEPARATOR;
+
+    private volatile Postings postings = new Postings();
+
+    /**
+     * The changes made while the index is being rebuilt, applied to the rebuilt index; null when not rebuilding.
+     */
+    private Map<Long, String> changedDuringRebuild;
+
+    /**
+     * Add or replace the text of an entity.
+     *
+     * @param text the normalized text, see {@link QuickSearchIndexDefinition#text(Object)}
+     */
+    public synchronized void put(Long id, String text) {
+        postings.put(id, text);
+        if (changedDuringRebuild != null) {
+            changedDuringRebuild.put(id, text);
+        }
+    }
+
+    public synchronized void remove(Long id) {
+        postings.remove(id);
+        if (changedDuringRebuild != null) {
+            changedDuringRebuild.put(id, null);
+        }
+    }
+
+    /**
+     * Record the changes from now on, they are applied on top of the texts passed to {@link #rebuild(Map)}.
+     */
+    public synchronized void startRebuild() {
+        changedDuringRebuild = new HashMap<>();
+    }
+
+    /**
+     * Stop recording the changes, e.g. when the texts could not be read. Does nothing after {@link #rebuild(Map)}.
+     */
+    public synchronized void stopRebuild() {
+        changedDuringRebuild = null;
+    }
+
+    /**
+     * Replace the content of the index, the texts having been read after {@link #startRebuild()}.
+     */
+    public void rebuild(Map<Long, String> texts) {
+        Postings rebuilt = new Postings();
+        texts.forEach(rebuilt::put);
+        synchronized (this) {
+            if (changedDuringRebuild != null) {
+                changedDuringRebuild.forEach((id, text) -> {
+                    if (text != null) {
+                        rebuilt.put(id, text);
+                    } else {
+                        rebuilt.remove(id);
+                    }
+                });
+                changedDuringRebuild = null;
+            }
+            postings = rebuilt;
+        }
+    }
+
+    /**
+     * @param text     the normalized searched text
+     * @param maxCount the maximum number of ids to return
+     * @return the ids of the entities whose text contains the searched text, empty if the text is too short to be
+     * resolved or more than {@code maxCount} entities may match
+     */
+    public Optional<Set<Long>> search(String text, int maxCount) {
+        return search(text, maxCount, false);
+    }
+
+    /**
+     * @param text     the normalized searched text
+     * @param maxCount the maximum number of ids to return
+     * @param prefix   whether an attribute of the text has to start with the searched text, rather than contain it
+     * @return the ids of the entities matching the searched text, empty if the text is too short to be resolved or
+     * more than {@code maxCount} entities may match
+     */
+    public Optional<Set<Long>> search(String text, int maxCount, boolean prefix) {
+        if (text == null || text.length() < N || text.indexOf(SEPARATOR) >= 0) {
+            return Optional.empty();
+        }
+        Postings current = postings;
+        List<Set<Long>> lists = new ArrayList<>();
+        for (String gram : grams(text)) {
+            Set<Long> ids = current.ids.get(gram);
+            if (ids == null) {
+                return Optional.of(Collections.emptySet());
+            }
+            lists.add(ids);
+        }
+        lists.sort(Comparator.comparingInt(Set::size));
+        Set<Long> result = new HashSet<>();
+        for (Long id : lists.get(0)) {
+            if (containsAll(lists, id)) {
+                String candidate = current.texts.get(id);
+                if (candidate != null && (prefix ? startsAnAttribute(candidate, text) : candidate.contains(text))) {
+                    if (result.size() == maxCount) {
+                        return Optional.empty();
+                    }
+                    result.add(id);
+                }
+            }
+        }
+        return Optional.of(result);
+    }
+
+    public int size() {
+        return postings.texts.size();
+    }
+
+    private static boolean startsAnAttribute(String candidate, String text) {
+        return candidate.startsWith(text) || candidate.contains(SEPARATOR + text);
+    }
+
+    private static boolean containsAll(List<Set<Long>> lists, Long id) {
+        for (int i = 1; i < lists.size(); i++) {
+            if (!lists.get(i).contains(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static Set<String> grams(String text) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + N <= text.length(); i++) {
+            String gram = text.substring(i, i + N);
+            if (gram.indexOf(SEPARATOR) < 0) {
+                grams.add(gram);
+            }
+        }
+        return grams;
+    }
+
+    private static final class Postings {
+
+        private final Map<String, Set<Long>> ids = new ConcurrentHashMap<>();
+
+        private final Map<Long, String> texts = new ConcurrentHashMap<>();
+
+        private void put(Long id, String text) {
+            remove(id);
+            texts.put(id, text);
+            grams(text).forEach(gram -> ids.computeIfAbsent(gram, key -> ConcurrentHashMap.newKeySet()).add(id));
+        }
+
+        private void remove(Long id) {
+            String text = texts.remove(id);
+            if (text != null) {
+                grams(text).forEach(gram -> ids.computeIfPresent(gram, (key, set) -> {
+                    set.remove(id);
+                    return set.isEmpty() ? null : set;
+                }));
+            }
+        }
+    }
+}
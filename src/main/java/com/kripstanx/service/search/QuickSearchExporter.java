@@ -0,0 +1,145 @@
+package com.kripstanx.service.search;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.kripstanx.config.ApplicationProperties;
+import org.hibernate.CacheMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Streams the entities matching a quick search specification as CSV or NDJSON.
+ * <p>
+ * The entities are read through a forward-only cursor, and the persistence context is cleared after every fetch, so
+ * the memory used does not depend on the number of exported rows. The output is flushed at the same pace, the HTTP
+ * response is sent in chunks.
+ */
+@Service
+public class QuickSearchExporter {
+
+    private final Logger log = LoggerFactory.getLogger(QuickSearchExporter.class);
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final ObjectWriter ndjsonWriter;
+
+    private final int fetchSize;
+
+    private final int maxRows;
+
+    public QuickSearchExporter(ObjectMapper objectMapper, ApplicationProperties applicationProperties) {
+        this.ndjsonWriter = objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+        ApplicationProperties.Export properties = applicationProperties.getQuickSearch().getExport();
+        this.fetchSize = properties.getFetchSize();
+        this.maxRows = properties.getMaxRows();
+    }
+
+    /**
+     * @param entityClass   the exported entity type
+     * @param specification the quick search, null for every entity
+     * @param sort          the order of the rows
+     * @param columns       the exported values of an entity, by column name
+     * @param format        the output format
+     * @param out           the output, left open
+     * @return the number of exported rows, at most max-rows
+     */
+    @Transactional(readOnly = true)
+    public <T> long export(Class<T> entityClass,
+                           Specification<T> specification,
+                           Sort sort,
+                           Map<String, Function<T, ?>> columns,
+                           ExportFormat format,
+                           OutputStream out) throws IOException {
+        Session session = entityManager.unwrap(Session.class);
+        CriteriaBuilder criteriaBuilder = session.getCriteriaBuilder();
+        CriteriaQuery<T> query = criteriaBuilder.createQuery(entityClass);
+        Root<T> root = query.from(entityClass);
+        if (specification != null) {
+            query.where(specification.toPredicate(root, query, criteriaBuilder));
+        }
+        query.orderBy(QueryUtils.toOrders(sort, root, criteriaBuilder));
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        long rows = 0;
+        try (ScrollableResults results = session.createQuery(query)
+                                                .setReadOnly(true)
+                                                .setFetchSize(fetchSize)
+                                                .setCacheMode(CacheMode.IGNORE)
+                                                .scroll(ScrollMode.FORWARD_ONLY)) {
+            if (format == ExportFormat.CSV) {
+                writeCsvLine(writer, columns.keySet());
+            }
+            while (rows < maxRows && results.next()) {
+                T entity = entityClass.cast(results.get(0));
+                Map<String, Object> row = new LinkedHashMap<>();
+                columns.forEach((name, column) -> row.put(name, column.apply(entity)));
+                if (format == ExportFormat.CSV) {
+                    writeCsvLine(writer, row.values());
+                } else {
+                    writer.write(ndjsonWriter.writeValueAsString(row));
+                    writer.write('\n');
+                }
+                if (++rows % fetchSize == 0) {
+                    writer.flush();
+                    session.clear();
+                }
+            }
+            if (rows == maxRows && results.next()) {
+                log.warn("Export of {} stopped after {} rows", entityClass.getSimpleName(), maxRows);
+            }
+        }
+        writer.flush();
+        return rows;
+    }
+
+    private static void writeCsvLine(Writer writer, Iterable<?> values) throws IOException {
+        boolean first = true;
+        for (Object value : values) {
+            if (!first) {
+                writer.write(',');
+            }
+            first = false;
+            writer.write(toCsvField(value));
+        }
+        writer.write("\r\n");
+    }
+
+    /**
+     * RFC 4180: the fields with a comma, a quote or a line break are quoted, with their quotes doubled.
+     */
+    private static String toCsvField(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String field = value.toString();
+        if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0 && field.indexOf('\r') < 0) {
+            return field;
+        }
+        return '"' + field.replace("\"", "\"\"") + '"';
+    }
+}
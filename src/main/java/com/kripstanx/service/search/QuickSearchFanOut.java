@@ -0,0 +1,143 @@
+package com.kripstanx.service.search;
+
+import com.kripstanx.config.ApplicationProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Resolves a quick search to entity ids with one id query per predicate, run in parallel, instead of a single query
+ * with an {@code OR} of the predicates, which rules out the indexes of the columns. See
+ * {@link com.kripstanx.service.builder.QuickSearchSpecBuilder#useFanOut(QuickSearchFanOut, Class)}.
+ * <p>
+ * The ids are unioned per term and intersected across the terms in memory; the page rows are then fetched by id.
+ */
+@Component
+public class QuickSearchFanOut {
+
+    private final Logger log = LoggerFactory.getLogger(QuickSearchFanOut.class);
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    private final ThreadPoolTaskExecutor executor;
+
+    private final boolean enabled;
+
+    private final int minPredicates;
+
+    private final int maxIds;
+
+    private final long timeoutMs;
+
+    public QuickSearchFanOut(EntityManagerFactory entityManagerFactory, ApplicationProperties applicationProperties) {
+        this.entityManagerFactory = entityManagerFactory;
+        ApplicationProperties.FanOut properties = applicationProperties.getQuickSearch().getFanOut();
+        this.enabled = properties.isEnabled();
+        this.minPredicates = properties.getMinPredicates();
+        this.maxIds = properties.getMaxIds();
+        this.timeoutMs = properties.getTimeoutMs();
+        this.executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(properties.getPoolSize());
+        executor.setMaxPoolSize(properties.getPoolSize());
+        executor.setQueueCapacity(properties.getQueueCapacity());
+        // a saturated pool slows the searches down rather than failing them
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setThreadNamePrefix("quick-search-");
+        executor.initialize();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the number of index-friendly predicates of a term from which the fan-out pays off
+     */
+    public int getMinPredicates() {
+        return minPredicates;
+    }
+
+    /**
+     * @param entityClass the searched entity type
+     * @param terms       the predicates of every term, an entity matches if it matches one predicate of each term
+     * @return the ids of the matching entities, empty if the search cannot be resolved: too many matches, a query
+     * failed or timed out
+     */
+    public <T> Optional<Set<Long>> search(Class<T> entityClass, List<List<Specification<T>>> terms) {
+        List<List<Future<List<Long>>>> futures = new ArrayList<>();
+        for (List<Specification<T>> predicates : terms) {
+            List<Future<List<Long>>> termFutures = new ArrayList<>();
+            for (Specification<T> predicate : predicates) {
+                termFutures.add(executor.submit(() -> findIds(entityClass, predicate)));
+            }
+            futures.add(termFutures);
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        try {
+            Set<Long> matching = null;
+            for (List<Future<List<Long>>> termFutures : futures) {
+                Set<Long> termIds = new HashSet<>();
+                for (Future<List<Long>> future : termFutures) {
+                    termIds.addAll(future.get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS));
+                    if (termIds.size() > maxIds) {
+                        return Optional.empty();
+                    }
+                }
+                if (matching == null) {
+                    matching = termIds;
+                } else {
+                    matching.retainAll(termIds);
+                }
+            }
+            return Optional.of(matching != null ? matching : new HashSet<>());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("Quick search fan-out of {} failed, falling back to a single query: {}", entityClass.getSimpleName(), e.toString());
+            return Optional.empty();
+        } finally {
+            futures.forEach(termFutures -> termFutures.forEach(future -> future.cancel(true)));
+        }
+    }
+
+    private <T> List<Long> findIds(Class<T> entityClass, Specification<T> predicate) {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+            CriteriaQuery<Long> query = criteriaBuilder.createQuery(Long.class);
+            Root<T> root = query.from(entityClass);
+            query.select(root.get("id")).where(predicate.toPredicate(root, query, criteriaBuilder));
+            return entityManager.createQuery(query)
+                                .setMaxResults(maxIds + 1)
+                                .setHint("org.hibernate.readOnly", true)
+                                .getResultList();
+        } finally {
+            entityManager.close();
+        }
+    }
+}
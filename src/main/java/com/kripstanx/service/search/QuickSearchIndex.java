@@ -0,0 +1,145 @@
+package com.kripstanx.service.search;
+
+import com.kripstanx.config.ApplicationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The n-gram indexes of the entities with a {@link QuickSearchIndexDefinition}, see
+ * {@link com.kripstanx.service.builder.QuickSearchSpecBuilder#useIndex(QuickSearchIndex, Class)}.
+ * <p>
+ * The indexes are loaded and rebuilt by the {@link QuickSearchIndexLoader}, and kept up to date by the
+ * {@link QuickSearchIndexListener} of the entities. The entities changed by the other nodes are reloaded when their
+ * invalidation events are received, see {@link QuickSearchIndexLoader#reload(Class, Collection)}.
+ */
+@Component
+public class QuickSearchIndex {
+
+    private final Map<Class<?>, IndexedEntity<?>> indexes;
+
+    private final boolean enabled;
+
+    private final int maxIds;
+
+    public QuickSearchIndex(List<QuickSearchIndexDefinition<?>> definitions, ApplicationProperties applicationProperties) {
+        this.indexes = definitions.stream()
+                                  .collect(Collectors.toMap(QuickSearchIndexDefinition::getEntityClass, IndexedEntity::new));
+        ApplicationProperties.Index properties = applicationProperties.getQuickSearch().getIndex();
+        this.enabled = properties.isEnabled();
+        this.maxIds = properties.getMaxIds();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param entityClass the searched entity type
+     * @param text        the searched text, not normalized
+     * @param prefix      whether one of the quick search attributes has to start with the text, rather than contain it
+     * @return the ids of the entities matching the text in one of their quick search attributes, empty if the index
+     * cannot resolve the search: disabled, no index for the entity, text too short or too many matches
+     */
+    public Optional<Set<Long>> search(Class<?> entityClass, String text, boolean prefix) {
+        IndexedEntity<?> indexed = indexes.get(entityClass);
+        if (!enabled || indexed == null || !indexed.loaded) {
+            return Optional.empty();
+        }
+        return indexed.index.search(QuickSearchIndexDefinition.normalize(text), maxIds, prefix);
+    }
+
+    Collection<QuickSearchIndexDefinition<?>> getDefinitions() {
+        return indexes.values().stream().map(indexed -> indexed.definition).collect(Collectors.toList());
+    }
+
+    void startRebuild(Class<?> entityClass) {
+        indexes.get(entityClass).index.startRebuild();
+    }
+
+    /**
+     * @param texts the normalized texts by id, read after {@link #startRebuild(Class)}
+     */
+    void rebuild(Class<?> entityClass, Map<Long, String> texts) {
+        IndexedEntity<?> indexed = indexes.get(entityClass);
+        indexed.index.rebuild(texts);
+        indexed.loaded = true;
+    }
+
+    void stopRebuild(Class<?> entityClass) {
+        indexes.get(entityClass).index.stopRebuild();
+    }
+
+    /**
+     * @param ids      the ids of the reloaded entities
+     * @param entities the entities found, the other ids have been deleted
+     */
+    void reload(Class<?> entityClass, Collection<Long> ids, List<?> entities) {
+        IndexedEntity<?> indexed = indexes.get(entityClass);
+        if (enabled && indexed != null) {
+            indexed.reload(ids, entities);
+        }
+    }
+
+    boolean isIndexed(Class<?> entityClass) {
+        return enabled && indexes.containsKey(entityClass);
+    }
+
+    int size(Class<?> entityClass) {
+        return indexes.get(entityClass).index.size();
+    }
+
+    void entityChanged(Object entity) {
+        IndexedEntity<?> indexed = indexes.get(entity.getClass());
+        if (enabled && indexed != null) {
+            indexed.put(entity);
+        }
+    }
+
+    void entityRemoved(Object entity) {
+        IndexedEntity<?> indexed = indexes.get(entity.getClass());
+        if (enabled && indexed != null) {
+            indexed.remove(entity);
+        }
+    }
+
+    private static final class IndexedEntity<T> {
+
+        private final QuickSearchIndexDefinition<T> definition;
+
+        private final NGramIndex index = new NGramIndex();
+
+        /**
+         * Searches fall back to the database until the index has been loaded.
+         */
+        private volatile boolean loaded;
+
+        private IndexedEntity(QuickSearchIndexDefinition<T> definition) {
+            this.definition = definition;
+        }
+
+        private void put(Object entity) {
+            T typed = definition.getEntityClass().cast(entity);
+            index.put(definition.id(typed), definition.text(typed));
+        }
+
+        private void remove(Object entity) {
+            index.remove(definition.id(definition.getEntityClass().cast(entity)));
+        }
+
+        private void reload(Collection<Long> ids, List<?> entities) {
+            Set<Long> deleted = new HashSet<>(ids);
+            for (Object entity : entities) {
+                put(entity);
+                deleted.remove(definition.id(definition.getEntityClass().cast(entity)));
+            }
+            deleted.forEach(index::remove);
+        }
+    }
+}
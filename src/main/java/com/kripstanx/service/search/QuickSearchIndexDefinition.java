@@ -0,0 +1,63 @@
+package com.kripstanx.service.search;
+
+import com.kripstanx.service.builder.QuickSearchSpecBuilder;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * The quick search attributes of an entity type, declared as a bean to have the entity indexed by the
+ * {@link QuickSearchIndex}. The entity must have the {@link QuickSearchIndexListener} to keep its index up to date.
+ * <p>
+ * The attributes are rendered as they are searched, e.g. a date the way the quick search formats it.
+ */
+public final class QuickSearchIndexDefinition<T> {
+
+    private final Class<T> entityClass;
+
+    private final Function<T, Long> id;
+
+    private final List<Function<T, ?>> attributes;
+
+    private QuickSearchIndexDefinition(Class<T> entityClass, Function<T, Long> id, List<Function<T, ?>> attributes) {
+        this.entityClass = entityClass;
+        this.id = id;
+        this.attributes = attributes;
+    }
+
+    @SafeVarargs
+    public static <T> QuickSearchIndexDefinition<T> of(Class<T> entityClass,
+                                                       Function<T, Long> id,
+                                                       Function<T, ?>... attributes) {
+        return new QuickSearchIndexDefinition<>(entityClass, id, Arrays.asList(attributes));
+    }
+
+    /**
+     * Normalize a text the way it is indexed and searched, like the search text column of the entities.
+     */
+    public static String normalize(String text) {
+        return QuickSearchSpecBuilder.normalizeSearchText(text);
+    }
+
+    public Class<T> getEntityClass() {
+        return entityClass;
+    }
+
+    public Long id(T entity) {
+        return id.apply(entity);
+    }
+
+    /**
+     * @return the normalized attributes of the entity, separated by {@link NGramIndex#SEPARATOR}
+     */
+    public String text(T entity) {
+        return attributes.stream()
+                         .map(attribute -> attribute.apply(entity))
+                         .filter(Objects::nonNull)
+                         .map(value -> normalize(value.toString()))
+                         .collect(Collectors.joining(String.valueOf(NGramIndex.SEPARATOR)));
+    }
+}
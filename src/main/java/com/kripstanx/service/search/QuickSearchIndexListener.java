@@ -0,0 +1,35 @@
+package com.kripstanx.service.search;
+
+import com.kripstanx.service.util.TransactionUtil;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+/**
+ * JPA entity listener keeping the {@link QuickSearchIndex} up to date with the committed changes of the entity.
+ * Instantiated by Hibernate through the Spring bean container.
+ * <p>
+ * Bulk JPQL and native updates bypass it: they must not change quick search attributes, or wait for the next rebuild.
+ */
+@Component
+public class QuickSearchIndexListener {
+
+    private final QuickSearchIndex quickSearchIndex;
+
+    public QuickSearchIndexListener(QuickSearchIndex quickSearchIndex) {
+        this.quickSearchIndex = quickSearchIndex;
+    }
+
+    @PostPersist
+    @PostUpdate
+    public void entityChanged(Object entity) {
+        TransactionUtil.runAfterCommit(() -> quickSearchIndex.entityChanged(entity));
+    }
+
+    @PostRemove
+    public void entityRemoved(Object entity) {
+        TransactionUtil.runAfterCommit(() -> quickSearchIndex.entityRemoved(entity));
+    }
+}
@@ -0,0 +1,102 @@
+package com.kripstanx.service.search;
+
+import org.hibernate.jpa.QueryHints;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Loads the quick search indexes from the database on startup, reloads the entities changed by the other nodes, and
+ * rebuilds the indexes on a schedule to pick up the bulk updates and the missed invalidation events.
+ */
+@Service
+public class QuickSearchIndexLoader {
+
+    private static final int FETCH_SIZE = 1000;
+
+    private final Logger log = LoggerFactory.getLogger(QuickSearchIndexLoader.class);
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final QuickSearchIndex quickSearchIndex;
+
+    public QuickSearchIndexLoader(QuickSearchIndex quickSearchIndex) {
+        this.quickSearchIndex = quickSearchIndex;
+    }
+
+    @Order(1)
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${application.quick-search.index.rebuild-cron:0 0 * * * *}")
+    @Transactional(readOnly = true)
+    public void rebuild() {
+        if (!quickSearchIndex.isEnabled()) {
+            return;
+        }
+        for (QuickSearchIndexDefinition<?> definition : quickSearchIndex.getDefinitions()) {
+            try {
+                rebuild(definition);
+            } catch (RuntimeException e) {
+                log.warn("Could not load the quick search index of {}: {}",
+                         definition.getEntityClass().getSimpleName(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reload the indexed texts of entities changed by another node, the ids not found have been deleted.
+     */
+    @Transactional(readOnly = true)
+    public void reload(Class<?> entityClass, Collection<Long> ids) {
+        if (ids.isEmpty() || !quickSearchIndex.isIndexed(entityClass)) {
+            return;
+        }
+        String entityName = entityManager.getMetamodel().entity(entityClass).getName();
+        List<?> entities = entityManager.createQuery("select e from " + entityName + " e where e.id in :ids", entityClass)
+                                        .setParameter("ids", ids)
+                                        .setHint(QueryHints.HINT_READONLY, true)
+                                        .getResultList();
+        quickSearchIndex.reload(entityClass, ids, entities);
+    }
+
+    private <T> void rebuild(QuickSearchIndexDefinition<T> definition) {
+        Class<T> entityClass = definition.getEntityClass();
+        long start = System.currentTimeMillis();
+        quickSearchIndex.startRebuild(entityClass);
+        Map<Long, String> texts = new HashMap<>();
+        String entityName = entityManager.getMetamodel().entity(entityClass).getName();
+        try (Stream<T> entities = entityManager.createQuery("select e from " + entityName + " e", entityClass)
+                                               .setHint(QueryHints.HINT_FETCH_SIZE, FETCH_SIZE)
+                                               .setHint(QueryHints.HINT_READONLY, true)
+                                               .getResultStream()) {
+            Iterator<T> iterator = entities.iterator();
+            while (iterator.hasNext()) {
+                T entity = iterator.next();
+                texts.put(definition.id(entity), definition.text(entity));
+                if (texts.size() % FETCH_SIZE == 0) {
+                    entityManager.clear();
+                }
+            }
+            quickSearchIndex.rebuild(entityClass, texts);
+        } finally {
+            // the changes are not recorded any longer if the texts could not be read
+            quickSearchIndex.stopRebuild(entityClass);
+        }
+        log.info("Loaded the quick search index of {}: {} entities in {} ms",
+                 entityClass.getSimpleName(), texts.size(), System.currentTimeMillis() - start);
+    }
+}
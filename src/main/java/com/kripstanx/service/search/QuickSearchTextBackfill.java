@@ -0,0 +1,117 @@
+package com.kripstanx.service.search;
+
+import com.kripstanx.domain.QuickSearchable;
+import com.kripstanx.service.builder.QuickSearchRegistration;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.jpa.QueryHints;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.Cache;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceUnitUtil;
+import java.sql.PreparedStatement;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Renders the missing search texts on startup: the rows written before the column was added, or reset to null after
+ * a change of the registered attributes. Runs before the quick search indexes are loaded.
+ * <p>
+ * Only the search text column is written, with a batched native update: flushing the entities would run their other
+ * callbacks, e.g. overwrite their last modification.
+ */
+@Service
+public class QuickSearchTextBackfill {
+
+    private static final int CHUNK_SIZE = 500;
+
+    private static final String SEARCH_TEXT_PROPERTY = "searchText";
+
+    private final Logger log = LoggerFactory.getLogger(QuickSearchTextBackfill.class);
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final QuickSearchTextListener quickSearchTextListener;
+
+    public QuickSearchTextBackfill(PlatformTransactionManager transactionManager,
+                                   QuickSearchTextListener quickSearchTextListener) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.quickSearchTextListener = quickSearchTextListener;
+    }
+
+    @Order(0)
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        for (QuickSearchRegistration<?> registration : quickSearchTextListener.getRegistrations()) {
+            if (QuickSearchable.class.isAssignableFrom(registration.getEntityClass())) {
+                try {
+                    backfill(registration.getEntityClass());
+                } catch (RuntimeException e) {
+                    log.warn("Could not render the search texts of {}: {}",
+                             registration.getEntityClass().getSimpleName(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void backfill(Class<?> entityClass) {
+        String entityName = entityManager.getMetamodel().entity(entityClass).getName();
+        AbstractEntityPersister persister = (AbstractEntityPersister) entityManager.getEntityManagerFactory()
+                                                                                   .unwrap(SessionFactoryImplementor.class)
+                                                                                   .getMetamodel()
+                                                                                   .entityPersister(entityClass);
+        String updateSql = "update " + persister.getTableName() +
+                           " set " + persister.getPropertyColumnNames(SEARCH_TEXT_PROPERTY)[0] + " = ?" +
+                           " where " + persister.getIdentifierColumnNames()[0] + " = ?";
+        Cache cache = entityManager.getEntityManagerFactory().getCache();
+        PersistenceUnitUtil persistenceUnitUtil = entityManager.getEntityManagerFactory().getPersistenceUnitUtil();
+        long rendered = 0;
+        int chunk;
+        do {
+            Map<Long, String> searchTexts = transactionTemplate.execute(status -> {
+                List<?> entities = entityManager.createQuery("select e from " + entityName + " e where e.searchText is null")
+                                                .setHint(QueryHints.HINT_READONLY, true)
+                                                .setMaxResults(CHUNK_SIZE)
+                                                .getResultList();
+                Map<Long, String> texts = new LinkedHashMap<>();
+                entities.forEach(entity -> texts.put((Long) persistenceUnitUtil.getIdentifier(entity),
+                                                     quickSearchTextListener.toSearchText(entity)));
+                entityManager.clear();
+                entityManager.unwrap(Session.class).doWork(connection -> {
+                    try (PreparedStatement statement = connection.prepareStatement(updateSql)) {
+                        for (Map.Entry<Long, String> text : texts.entrySet()) {
+                            statement.setString(1, text.getValue());
+                            statement.setLong(2, text.getKey());
+                            statement.addBatch();
+                        }
+                        statement.executeBatch();
+                    }
+                });
+                return texts;
+            });
+            chunk = searchTexts != null ? searchTexts.size() : 0;
+            if (searchTexts != null) {
+                // the cached entities do not have their search text
+                searchTexts.keySet().forEach(id -> cache.evict(entityClass, id));
+            }
+            rendered += chunk;
+        } while (chunk == CHUNK_SIZE);
+        if (rendered > 0) {
+            log.info("Rendered the search text of {} {} entities", rendered, entityClass.getSimpleName());
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.kripstanx.service.search;
+
+import com.kripstanx.domain.QuickSearchable;
+import com.kripstanx.service.builder.QuickSearchRegistration;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * JPA entity listener rendering the search text column of the {@link QuickSearchable} entities from their
+ * {@link QuickSearchRegistration} on every write. Instantiated by Hibernate through the Spring bean container.
+ */
+@Component
+public class QuickSearchTextListener {
+
+    private final Map<Class<?>, QuickSearchRegistration<?>> registrations;
+
+    public QuickSearchTextListener(List<QuickSearchRegistration<?>> registrations) {
+        this.registrations = registrations.stream()
+                                          .collect(Collectors.toMap(QuickSearchRegistration::getEntityClass,
+                                                                    registration -> registration));
+    }
+
+    @PrePersist
+    @PreUpdate
+    public void updateSearchText(Object entity) {
+        if (entity instanceof QuickSearchable && registrations.containsKey(entity.getClass())) {
+            ((QuickSearchable) entity).setSearchText(toSearchText(entity));
+        }
+    }
+
+    Collection<QuickSearchRegistration<?>> getRegistrations() {
+        return registrations.values();
+    }
+
+    /**
+     * @return the search text of a registered entity
+     */
+    String toSearchText(Object entity) {
+        return toSearchText(registrations.get(entity.getClass()), entity);
+    }
+
+    private static <T> String toSearchText(QuickSearchRegistration<T> registration, Object entity) {
+        return registration.toSearchText(registration.getEntityClass().cast(entity));
+    }
+}
@@ -0,0 +1,81 @@
+package com.kripstanx.service.util;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Opaque continuation token of keyset (seek) pagination: the sort key and the id of the last row of a slice. The
+ * next slice starts right after that row, without an offset.
+ * <p>
+ * A null sort key is encoded as an empty key, e.g. an audit event without a date.
+ */
+public final class KeysetCursor {
+
+    private static final char SEPARATOR = ':';
+
+    private final String key;
+
+    private final long id;
+
+    private KeysetCursor(String key, long id) {
+        this.key = key;
+        this.id = id;
+    }
+
+    public static KeysetCursor of(String key, Long id) {
+        return new KeysetCursor(key != null ? key : "", id);
+    }
+
+    public static KeysetCursor of(Instant key, Long id) {
+        return new KeysetCursor(key != null ? key.toString() : "", id);
+    }
+
+    /**
+     * @param token a token returned by {@link #encode()}
+     * @return the cursor, or null for a null or empty token (first slice)
+     * @throws IllegalArgumentException if the token is invalid
+     */
+    public static KeysetCursor decode(String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = decoded.indexOf(SEPARATOR);
+            return new KeysetCursor(decoded.substring(separator + 1), Long.parseLong(decoded.substring(0, separator)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + token, e);
+        }
+    }
+
+    public String encode() {
+        return Base64.getUrlEncoder()
+                     .withoutPadding()
+                     .encodeToString((id + String.valueOf(SEPARATOR) + key).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return the instant, null for a null sort key
+     * @throws IllegalArgumentException if the key is not an instant
+     */
+    public Instant getInstantKey() {
+        if (key.isEmpty()) {
+            return null;
+        }
+        try {
+            return Instant.parse(key);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor key: " + key, e);
+        }
+    }
+
+    public long getId() {
+        return id;
+    }
+}
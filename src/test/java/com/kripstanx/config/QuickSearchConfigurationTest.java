@@ -0,0 +1,115 @@
+package com.kripstanx.config;
+
+import com.kripstanx.domain.User;
+import com.kripstanx.domain.User_;
+import com.kripstanx.service.builder.QuickSearchRegistration;
+import com.kripstanx.service.search.QuickSearchFanOut;
+import com.kripstanx.service.search.QuickSearchIndex;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import javax.persistence.metamodel.SingularAttribute;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * The strategy the quick search of the users picks with the mysql profile settings: the n-gram index, then the full-text
+ * search of the search text column, and the fan-out for the terms too short for the full-text search.
+ */
+class QuickSearchConfigurationTest {
+
+    private static boolean mockedMetamodel;
+
+    private QuickSearchIndex quickSearchIndex;
+
+    private QuickSearchFanOut quickSearchFanOut;
+
+    private ApplicationProperties applicationProperties;
+
+    @BeforeAll
+    @SuppressWarnings("unchecked")
+    static void mockMetamodel() {
+        // populated by Hibernate only, the searched attributes themselves are not used as the queries are mocked
+        if (User_.searchText == null) {
+            User_.searchText = mock(SingularAttribute.class);
+            mockedMetamodel = true;
+        }
+    }
+
+    @AfterAll
+    static void resetMetamodel() {
+        if (mockedMetamodel) {
+            User_.searchText = null;
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        quickSearchIndex = mock(QuickSearchIndex.class);
+        when(quickSearchIndex.search(any(), anyString(), anyBoolean())).thenReturn(Optional.empty());
+        quickSearchFanOut = mock(QuickSearchFanOut.class);
+        when(quickSearchFanOut.isEnabled()).thenReturn(true);
+        when(quickSearchFanOut.getMinPredicates()).thenReturn(2);
+        when(quickSearchFanOut.search(eq(User.class), anyList())).thenReturn(Optional.of(Collections.singleton(1L)));
+        applicationProperties = new ApplicationProperties();
+        applicationProperties.getQuickSearch().setFullText(true);
+        applicationProperties.getQuickSearch().setCaseInsensitiveCollation(true);
+    }
+
+    @Test
+    void fansOutTheTermsTooShortForTheFullTextSearch() {
+        assertThat(registration().toSpecification("john+s")).isNotNull();
+
+        // one prefix predicate per attribute for each of the two terms
+        verify(quickSearchFanOut).search(eq(User.class), argThat(terms -> terms.size() == 2
+            && terms.stream().allMatch(predicates -> predicates.size() == 4)));
+    }
+
+    @Test
+    void prefersTheFullTextSearch() {
+        assertThat(registration().toSpecification("john+smi")).isNotNull();
+
+        verify(quickSearchFanOut, never()).search(any(), anyList());
+    }
+
+    @Test
+    void prefersTheIndex() {
+        when(quickSearchIndex.search(eq(User.class), anyString(), eq(true))).thenReturn(Optional.of(Collections.singleton(1L)));
+
+        assertThat(registration().toSpecification("john+s")).isNotNull();
+
+        verify(quickSearchFanOut, never()).search(any(), anyList());
+    }
+
+    @Test
+    void doesNotFanOutWithoutCaseInsensitiveCollation() {
+        applicationProperties.getQuickSearch().setCaseInsensitiveCollation(false);
+
+        assertThat(registration().toSpecification("john+s")).isNotNull();
+
+        verify(quickSearchFanOut, never()).search(any(), anyList());
+    }
+
+    private QuickSearchRegistration<User> registration() {
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("quickSearchFanOut", quickSearchFanOut);
+        return new QuickSearchConfiguration().userQuickSearchRegistration(quickSearchIndex,
+                                                                          beanFactory.getBeanProvider(QuickSearchFanOut.class),
+                                                                          applicationProperties);
+    }
+}
@@ -0,0 +1,130 @@
+package com.kripstanx.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * The binary format of the audit event data: round trips, and the rejection of data it could not have written.
+ */
+class AuditEventDataConverterTest {
+
+    @Test
+    void roundTripsDictionaryAndOtherKeys() {
+        Map<String, String> data = new HashMap<>();
+        data.put("remoteAddress", "127.0.0.1");
+        data.put("sessionId", "abc");
+        data.put("type", "org.springframework.security.authentication.BadCredentialsException");
+        data.put("message", "Bad credentials");
+        data.put("details", "other key");
+
+        assertThat(AuditEventDataConverter.decode(AuditEventDataConverter.encode(data))).isEqualTo(data);
+    }
+
+    @Test
+    void writesDictionaryKeysAsTheirCode() {
+        Map<String, String> data = new HashMap<>();
+        data.put("sessionId", "a");
+
+        assertThat(AuditEventDataConverter.encode(data)).containsExactly(1, 1, 2, 2, 'a');
+    }
+
+    @Test
+    void roundTripsNullKeysAndValues() {
+        Map<String, String> data = new HashMap<>();
+        data.put(null, "no key");
+        data.put("message", null);
+        data.put("details", "");
+
+        assertThat(AuditEventDataConverter.decode(AuditEventDataConverter.encode(data))).isEqualTo(data);
+    }
+
+    @Test
+    void roundTripsMultiByteCharacters() {
+        Map<String, String> data = new HashMap<>();
+        data.put("n\u00e9v", "\u00c1rv\u00edzt\u0171r\u0151 t\u00fck\u00f6rf\u00far\u00f3g\u00e9p \u03a3 \u20ac \ud801\udc00");
+
+        assertThat(AuditEventDataConverter.decode(AuditEventDataConverter.encode(data))).isEqualTo(data);
+    }
+
+    @Test
+    void storesEmptyDataAsNull() {
+        assertThat(AuditEventDataConverter.encode(new HashMap<>())).isNull();
+        assertThat(AuditEventDataConverter.encode(null)).isNull();
+        assertThat(AuditEventDataConverter.decode(null)).isEmpty();
+        assertThat(AuditEventDataConverter.decode(new byte[0])).isEmpty();
+    }
+
+    @Test
+    void writesLengthsOfAtLeast128AsMultiByteVarints() {
+        char[] chars = new char[127];
+        Arrays.fill(chars, 'x');
+        Map<String, String> data = new HashMap<>();
+        data.put("message", new String(chars));
+
+        byte[] bytes = AuditEventDataConverter.encode(data);
+
+        // version, size, key code, then the length plus one: 128 as 0x80 0x01
+        assertThat(Arrays.copyOf(bytes, 5)).containsExactly(1, 1, 4, 0x80, 0x01);
+        assertThat(AuditEventDataConverter.decode(bytes)).isEqualTo(data);
+    }
+
+    @Test
+    void roundTripsLongValuesAndManyEntries() {
+        char[] chars = new char[20_000];
+        Arrays.fill(chars, '\u00e9');
+        Map<String, String> data = new HashMap<>();
+        data.put("message", new String(chars));
+        for (int i = 0; i < 300; i++) {
+            data.put("key" + i, "value" + i);
+        }
+
+        assertThat(AuditEventDataConverter.decode(AuditEventDataConverter.encode(data))).isEqualTo(data);
+    }
+
+    @Test
+    void rejectsUnknownVersion() {
+        assertThatThrownBy(() -> AuditEventDataConverter.decode(new byte[] { 2, 0 }))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("version");
+    }
+
+    @Test
+    void rejectsUnknownKeyCode() {
+        assertThatThrownBy(() -> AuditEventDataConverter.decode(new byte[] { 1, 1, 5, 0 }))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("key code 5");
+        assertThatThrownBy(() -> AuditEventDataConverter.decode(new byte[] { 1, 1, (byte) 0xFF, 0 }))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("key code 255");
+    }
+
+    @Test
+    void rejectsTruncatedData() {
+        char[] chars = new char[200];
+        Arrays.fill(chars, '\u00e9');
+        Map<String, String> data = new HashMap<>();
+        data.put("remoteAddress", "127.0.0.1");
+        data.put("details", new String(chars));
+        byte[] bytes = AuditEventDataConverter.encode(data);
+
+        for (int length = 1; length < bytes.length; length++) {
+            byte[] truncated = Arrays.copyOf(bytes, length);
+            assertThatThrownBy(() -> AuditEventDataConverter.decode(truncated))
+                .as("truncated to %d bytes", length)
+                .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    void rejectsOverlongVarint() {
+        byte[] bytes = { 1, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0 };
+
+        assertThatThrownBy(() -> AuditEventDataConverter.decode(bytes)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
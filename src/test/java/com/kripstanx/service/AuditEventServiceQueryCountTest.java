@@ -0,0 +1,107 @@
+package com.kripstanx.service;
+
+import com.kripstanx.domain.PersistentAuditEvent;
+import com.kripstanx.repository.PersistenceAuditEventRepository;
+import com.kripstanx.service.dto.CursorSlice;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.audit.AuditEvent;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The audit events of a page are loaded with their data in a fixed number of queries, whatever the page size: the
+ * data is a column of the events.
+ */
+@SpringBootTest
+@Transactional
+class AuditEventServiceQueryCountTest {
+
+    private static final int EVENT_COUNT = 50;
+
+    private static final int PAGE_SIZE = 20;
+
+    @Autowired
+    private AuditEventService auditEventService;
+
+    @Autowired
+    private PersistenceAuditEventRepository persistenceAuditEventRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        persistenceAuditEventRepository.deleteAll();
+        Instant now = Instant.now();
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            PersistentAuditEvent event = new PersistentAuditEvent();
+            event.setPrincipal("user" + i % 3);
+            event.setAuditEventType("AUTHENTICATION_SUCCESS");
+            event.setAuditEventDate(now.minusSeconds(i));
+            event.getData().put("remoteAddress", "127.0.0." + i);
+            event.getData().put("sessionId", "session" + i);
+            persistenceAuditEventRepository.save(event);
+        }
+        entityManager.flush();
+        entityManager.clear();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+    }
+
+    @Test
+    void findAllLoadsPageAndCountInTwoQueries() {
+        Page<AuditEvent> page = auditEventService.findAll(PageRequest.of(0, PAGE_SIZE));
+
+        assertThat(page.getContent()).hasSize(PAGE_SIZE);
+        assertThat(page.getContent()).allSatisfy(event -> assertThat(event.getData()).hasSize(2));
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+    }
+
+    @Test
+    void findByDatesLoadsPageAndCountInTwoQueries() {
+        Page<AuditEvent> page = auditEventService.findByDates(Instant.now().minusSeconds(3600),
+                                                              Instant.now().plusSeconds(60),
+                                                              PageRequest.of(1, PAGE_SIZE));
+
+        assertThat(page.getContent()).hasSize(PAGE_SIZE);
+        assertThat(page.getContent()).allSatisfy(event -> assertThat(event.getData()).hasSize(2));
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+    }
+
+    @Test
+    void cursorSliceLoadsEventsInOneQuery() {
+        CursorSlice<AuditEvent> first = auditEventService.findAll(null, PAGE_SIZE, false);
+        CursorSlice<AuditEvent> second = auditEventService.findAll(first.getNextCursor(), PAGE_SIZE, false);
+
+        assertThat(first.getContent()).hasSize(PAGE_SIZE);
+        assertThat(second.getContent()).hasSize(PAGE_SIZE);
+        assertThat(second.getContent()).allSatisfy(event -> assertThat(event.getData()).hasSize(2));
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+    }
+
+    @Test
+    void auditEventsByUserAreLoadedWithTheirDataInOneQuery() {
+        assertThat(auditEventService.getAuditEventsByUserOrderByAuditEventDateDesc("user0"))
+            .hasSize(17)
+            .allSatisfy(event -> assertThat(event.getData()).hasSize(2));
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+}
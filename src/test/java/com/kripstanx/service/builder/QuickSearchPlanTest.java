@@ -0,0 +1,125 @@
+package com.kripstanx.service.builder;
+
+import com.kripstanx.domain.User;
+import com.kripstanx.domain.User_;
+import com.kripstanx.repository.UserRepository;
+import com.kripstanx.service.search.QuickSearchFanOut;
+import com.kripstanx.service.search.QuickSearchIndex;
+import com.kripstanx.service.search.QuickSearchIndexLoader;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.support.SimpleJpaRepository;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The strategies of a quick search whose attributes are all matched by prefix find the same users, whatever the length
+ * of the terms: the attribute predicates, the search text column, the n-gram index and the fan-out.
+ * <p>
+ * The users are committed, the fan-out queries run on their own connections. They are in lower case, as H2 compares
+ * case sensitively and the fan-out needs a case insensitive collation.
+ */
+@SpringBootTest(properties = { "application.quick-search.index.enabled=true", "application.quick-search.fan-out.enabled=true" })
+class QuickSearchPlanTest {
+
+    private static final String[] TEXTS = { "j", "jo", "joh", "john", "s", "sm", "smi", "john s", "john smi", "ith",
+        "mith", "ohn", "ann", "example", "x" };
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private QuickSearchIndex quickSearchIndex;
+
+    @Autowired
+    private QuickSearchIndexLoader quickSearchIndexLoader;
+
+    @Autowired
+    private QuickSearchFanOut quickSearchFanOut;
+
+    private final List<User> users = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        users.add(user("jsmith", "john", "smith", "jsmith@example.com"));
+        users.add(user("sjohnson", "sam", "johnson", "sam@example.com"));
+        users.add(user("jblacksmith", "joe", "blacksmith", "joe.b@example.com"));
+        users.add(user("mary", "mary ann", "smithers", "mary@example.com"));
+        userRepository.saveAll(users);
+        quickSearchIndexLoader.rebuild();
+    }
+
+    @AfterEach
+    void tearDown() {
+        userRepository.deleteAll(users);
+        users.clear();
+    }
+
+    @Test
+    void everyStrategyFindsTheSameUsers() {
+        for (String text : TEXTS) {
+            Set<Long> expected = ids(builder(text).build());
+
+            assertThat(ids(builder(text).useSearchTextColumn(User_.searchText, false).build()))
+                .as("search text column, '%s'", text)
+                .isEqualTo(expected);
+            assertThat(ids(builder(text).useIndex(quickSearchIndex, User.class).build()))
+                .as("index, '%s'", text)
+                .isEqualTo(expected);
+            assertThat(ids(builder(text).useFanOut(quickSearchFanOut, User.class).useCaseInsensitiveCollation().build()))
+                .as("fan-out, '%s'", text)
+                .isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void indexMatchesTheStartOfTheAttributes() {
+        // blacksmith contains the text, but none of its attributes starts with it
+        assertThat(ids(builder("smi").useIndex(quickSearchIndex, User.class).build()))
+            .contains(users.get(0).getId(), users.get(3).getId())
+            .doesNotContain(users.get(2).getId());
+    }
+
+    private static QuickSearchSpecBuilder<User> builder(String text) {
+        return new QuickSearchSpecBuilder<User>(text)
+            .multiTerm()
+            .addStringAttribute(User_.username, QuickSearchMatchMode.PREFIX)
+            .addStringAttribute(User_.firstName, QuickSearchMatchMode.PREFIX)
+            .addStringAttribute(User_.lastName, QuickSearchMatchMode.PREFIX)
+            .addStringAttribute(User_.email, QuickSearchMatchMode.PREFIX);
+    }
+
+    private Set<Long> ids(Specification<User> specification) {
+        return new SimpleJpaRepository<User, Long>(User.class, entityManager).findAll(specification)
+                                                                            .stream()
+                                                                            .map(User::getId)
+                                                                            .collect(Collectors.toSet());
+    }
+
+    private static User user(String username, String firstName, String lastName, String email) {
+        User user = new User();
+        user.setUsername(username);
+        user.setPassword(StringUtils.repeat('x', 60));
+        user.setFirstName(firstName);
+        user.setLastName(lastName);
+        user.setEmail(email);
+        user.setActiveIndicator(true);
+        user.setLangKey("en");
+        user.setCreatedBy("system");
+        return user;
+    }
+}
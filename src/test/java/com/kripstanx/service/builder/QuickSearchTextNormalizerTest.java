@@ -0,0 +1,100 @@
+package com.kripstanx.service.builder;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * The single pass normalizer matches URL decoding, lower casing and escaping one after the other, on random valid
+ * input.
+ */
+class QuickSearchTextNormalizerTest {
+
+    private static final int FUZZ_ITERATIONS = 200_000;
+
+    private static final String ALPHABET = "aAzZ09 +%_|-.~,\"'\u0130\u03a3\u03c3\u00c4\u00e9\u00df\u2126\ud801\udc00";
+
+    @Test
+    void likeTermMatchesDecodeLowerCaseAndEscape() throws UnsupportedEncodingException {
+        Random random = new Random(20261018L);
+        for (int i = 0; i < FUZZ_ITERATIONS; i++) {
+            String encoded = randomEncodedText(random);
+            assertThat(QuickSearchTextNormalizer.toLikeTerm(encoded)).as(encoded).isEqualTo(reference(encoded));
+            assertThat(QuickSearchTextNormalizer.decode(encoded))
+                .as(encoded)
+                .isEqualTo(URLDecoder.decode(encoded, StandardCharsets.UTF_8.name()));
+        }
+    }
+
+    @Test
+    void likeTermHandlesContextDependentLowerCase() throws UnsupportedEncodingException {
+        for (String text : new String[] { "\u0130stanbul", "\u039f\u0394\u039f\u03a3", "\u03a3\u03a3 \u03a3a", "\ud801\udc00x" }) {
+            String encoded = URLEncoder.encode(text, StandardCharsets.UTF_8.name());
+            assertThat(QuickSearchTextNormalizer.toLikeTerm(encoded)).isEqualTo(reference(encoded));
+            assertThat(QuickSearchTextNormalizer.toLikeTerm(text)).isEqualTo(reference(text));
+        }
+    }
+
+    @Test
+    void likeTermEscapesWildcardsAndEscapeCharacter() {
+        assertThat(QuickSearchTextNormalizer.toLikeTerm("50%25_off|now")).isEqualTo("50|%|_off||now");
+        assertThat(QuickSearchTextNormalizer.toLikeTerm("John+Smith")).isEqualTo("john smith");
+    }
+
+    @Test
+    void plainLowerCaseTextIsReturnedAsIs() {
+        String text = "john smith";
+        assertThat(QuickSearchTextNormalizer.toLikeTerm(text)).isSameAs(text);
+        assertThat(QuickSearchTextNormalizer.decode(text)).isSameAs(text);
+        assertThat(QuickSearchTextNormalizer.escapeLike(text)).isSameAs(text);
+    }
+
+    @Test
+    void malformedEscapesAreRejected() {
+        assertThatThrownBy(() -> QuickSearchTextNormalizer.toLikeTerm("abc%4")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> QuickSearchTextNormalizer.toLikeTerm("%zz")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> QuickSearchTextNormalizer.decode("%")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * The previous decode, lower case and escape, with the escape character escaped as well.
+     */
+    private static String reference(String encoded) throws UnsupportedEncodingException {
+        return URLDecoder.decode(encoded, StandardCharsets.UTF_8.name())
+                         .toLowerCase(Locale.ROOT)
+                         .replace("|", "||")
+                         .replace("%", "|%")
+                         .replace("_", "|_");
+    }
+
+    /**
+     * A random text, URL encoded either fully or only for its {@code %} and {@code +}.
+     */
+    private static String randomEncodedText(Random random) throws UnsupportedEncodingException {
+        StringBuilder text = new StringBuilder();
+        int length = random.nextInt(16);
+        for (int i = 0; i < length; i++) {
+            switch (random.nextInt(3)) {
+                case 0:
+                    text.append((char) random.nextInt(0x3000));
+                    break;
+                case 1:
+                    text.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+                    break;
+                default:
+                    text.append((char) (' ' + random.nextInt(0x5f)));
+            }
+        }
+        return random.nextBoolean()
+            ? URLEncoder.encode(text.toString(), StandardCharsets.UTF_8.name())
+            : text.toString().replace("%", "%25").replace("+", "%2B");
+    }
+}
@@ -0,0 +1,128 @@
+package com.kripstanx.service.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Substring searches of the trigram index, and the changes made while it is being rebuilt.
+ */
+class NGramIndexTest {
+
+    private static final int MAX_COUNT = 100;
+
+    private static final String SEPARATOR = String.valueOf(NGramIndex.SEPARATOR);
+
+    @Test
+    void findsTheTextsContainingTheSearchedText() {
+        NGramIndex index = new NGramIndex();
+        index.put(1L, "john" + SEPARATOR + "smith");
+        index.put(2L, "jane" + SEPARATOR + "smithers");
+        index.put(3L, "joe" + SEPARATOR + "blacksmith");
+
+        assertThat(index.search("smith", MAX_COUNT)).hasValueSatisfying(ids -> assertThat(ids).containsOnly(1L, 2L, 3L));
+        assertThat(index.search("smithe", MAX_COUNT)).hasValueSatisfying(ids -> assertThat(ids).containsOnly(2L));
+        assertThat(index.search("joh", MAX_COUNT)).hasValueSatisfying(ids -> assertThat(ids).containsOnly(1L));
+        assertThat(index.search("xyz", MAX_COUNT)).hasValueSatisfying(ids -> assertThat(ids).isEmpty());
+    }
+
+    @Test
+    void checksTheCandidatesAgainstTheirText() {
+        NGramIndex index = new NGramIndex();
+        // every trigram of "abcd", but not "abcd" itself
+        index.put(1L, "abcxbcd");
+
+        assertThat(index.search("abcd", MAX_COUNT)).hasValueSatisfying(ids -> assertThat(ids).isEmpty());
+    }
+
+    @Test
+    void doesNotMatchAcrossAttributes() {
+        NGramIndex index = new NGramIndex();
+        index.put(1L, "john" + SEPARATOR + "smith");
+
+        assertThat(index.search("hns", MAX_COUNT)).hasValueSatisfying(ids -> assertThat(ids).isEmpty());
+        assertThat(index.search("john" + SEPARATOR + "smith", MAX_COUNT)).isEmpty();
+    }
+
+    @Test
+    void cannotResolveShortTextsOrTooManyMatches() {
+        NGramIndex index = new NGramIndex();
+        index.put(1L, "john");
+        index.put(2L, "johnny");
+
+        assertThat(index.search("jo", MAX_COUNT)).isEmpty();
+        assertThat(index.search(null, MAX_COUNT)).isEmpty();
+        assertThat(index.search("john", 1)).isEmpty();
+        assertThat(index.search("john", 2)).hasValueSatisfying(ids -> assertThat(ids).containsOnly(1L, 2L));
+    }
+
+    @Test
+    void replacesAndRemovesTexts() {
+        NGramIndex index = new NGramIndex();
+        index.put(1L, "john");
+        index.put(1L, "jack");
+
+        assertThat(index.search("john", MAX_COUNT)).hasValueSatisfying(ids -> assertThat(ids).isEmpty());
+        assertThat(index.search("jack", MAX_COUNT)).hasValueSatisfying(ids -> assertThat(ids).containsOnly(1L));
+        assertThat(index.size()).isEqualTo(1);
+
+        index.remove(1L);
+
+        assertThat(index.search("jack", MAX_COUNT)).hasValueSatisfying(ids -> assertThat(ids).isEmpty());
+        assertThat(index.size()).isZero();
+    }
+
+    @Test
+    void rebuildReplacesTheContent() {
+        NGramIndex index = new NGramIndex();
+        index.put(1L, "john");
+        Map<Long, String> texts = new HashMap<>();
+        texts.put(2L, "jane");
+
+        index.startRebuild();
+        index.rebuild(texts);
+
+        assertThat(index.search("john", MAX_COUNT)).hasValueSatisfying(ids -> assertThat(ids).isEmpty());
+        assertThat(index.search("jane", MAX_COUNT)).hasValueSatisfying(ids -> assertThat(ids).containsOnly(2L));
+    }
+
+    @Test
+    void rebuildAppliesTheChangesMadeInTheMeantime() {
+        NGramIndex index = new NGramIndex();
+        index.startRebuild();
+        // read before the changes below
+        Map<Long, String> texts = new HashMap<>();
+        texts.put(1L, "john");
+        texts.put(2L, "jane");
+        index.put(1L, "jack");
+        index.remove(2L);
+        index.put(3L, "joe");
+
+        index.rebuild(texts);
+
+        assertThat(index.search("jac", MAX_COUNT)).hasValueSatisfying(ids -> assertThat(ids).containsOnly(1L));
+        assertThat(index.search("joh", MAX_COUNT)).hasValueSatisfying(ids -> assertThat(ids).isEmpty());
+        assertThat(index.search("jan", MAX_COUNT)).hasValueSatisfying(ids -> assertThat(ids).isEmpty());
+        assertThat(index.search("joe", MAX_COUNT)).hasValueSatisfying(ids -> assertThat(ids).containsOnly(3L));
+        assertThat(index.size()).isEqualTo(2);
+    }
+
+    @Test
+    void stopsRecordingTheChangesOfAFailedRebuild() {
+        NGramIndex index = new NGramIndex();
+        index.startRebuild();
+        index.put(1L, "john");
+        index.stopRebuild();
+
+        Map<Long, String> texts = new HashMap<>();
+        texts.put(2L, "jane");
+        index.rebuild(texts);
+
+        // the change made during the failed rebuild is not replayed on top of the next one
+        assertThat(index.search("joh", MAX_COUNT)).hasValueSatisfying(ids -> assertThat(ids).isEmpty());
+        assertThat(index.search("jan", MAX_COUNT)).hasValueSatisfying(ids -> assertThat(ids).containsOnly(2L));
+    }
+}